@@ -8,6 +8,9 @@ import org.locationtech.jts.geom.Geometry;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * 坐标工具类
  *
@@ -20,6 +23,11 @@ public class CoordinatorUtils {
     private CoordinatorUtils() {
     }
 
+    /**
+     * 坐标转换缓存，key为"原始srid:目标srid"
+     */
+    private static final Map<String, MathTransform> MATH_TRANSFORM_CACHE = new ConcurrentHashMap<>();
+
     /**
      * 地理信息转换
      *
@@ -28,11 +36,18 @@ public class CoordinatorUtils {
      * @return 目标地理对象
      */
     public static Geometry transform(Geometry srcGeometry, Integer targetSrid) {
+        return transform(srcGeometry, getMathTransform(srcGeometry.getSRID(), targetSrid));
+    }
+
+    /**
+     * 地理信息转换
+     *
+     * @param srcGeometry   原始地理对象
+     * @param mathTransform 坐标转换，可通过getMathTransform获取后重复使用
+     * @return 目标地理对象
+     */
+    public static Geometry transform(Geometry srcGeometry, MathTransform mathTransform) {
         try {
-            int srcEpsg = srcGeometry.getSRID();
-            CoordinateReferenceSystem srcCrs = CRS.decode("EPSG:" + srcEpsg, true);
-            CoordinateReferenceSystem targetCrs = CRS.decode("EPSG:" + targetSrid, true);
-            MathTransform mathTransform = CRS.findMathTransform(srcCrs, targetCrs, true);
             return JTS.transform(srcGeometry, mathTransform);
         } catch (Exception e) {
             throw new CoordinatorException(e.getMessage(), e);
@@ -40,6 +55,28 @@ public class CoordinatorUtils {
     }
 
 
+    /**
+     * 获取坐标转换，同一对srid只构建一次，转换对象线程安全可共用
+     *
+     * @param srcSrid    原始坐标srid
+     * @param targetSrid 目标坐标srid
+     * @return 坐标转换
+     */
+    public static MathTransform getMathTransform(Integer srcSrid, Integer targetSrid) {
+        return MATH_TRANSFORM_CACHE.computeIfAbsent(srcSrid + ":" + targetSrid,
+                key -> createMathTransform(srcSrid, targetSrid));
+    }
+
+    private static MathTransform createMathTransform(Integer srcSrid, Integer targetSrid) {
+        try {
+            CoordinateReferenceSystem srcCrs = CRS.decode("EPSG:" + srcSrid, true);
+            CoordinateReferenceSystem targetCrs = CRS.decode("EPSG:" + targetSrid, true);
+            return CRS.findMathTransform(srcCrs, targetCrs, true);
+        } catch (Exception e) {
+            throw new CoordinatorException(e.getMessage(), e);
+        }
+    }
+
     /**
      * 获取srid代码
      *
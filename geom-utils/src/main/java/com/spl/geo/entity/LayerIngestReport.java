@@ -0,0 +1,106 @@
+package com.spl.geo.entity;
+
+/**
+ * 图层入库结果
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/15
+ */
+public class LayerIngestReport {
+
+    private String shpPath;
+
+    private String tableName;
+
+    /**
+     * 导入的要素数量
+     */
+    private long rows;
+
+    /**
+     * shp与dbf文件的字节数
+     */
+    private long bytes;
+
+    /**
+     * 耗时，单位毫秒
+     */
+    private long elapsedMillis;
+
+    private boolean success;
+
+    /**
+     * 失败原因
+     */
+    private String errorMessage;
+
+    public String getShpPath() {
+        return shpPath;
+    }
+
+    public void setShpPath(String shpPath) {
+        this.shpPath = shpPath;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    @Override
+    public String toString() {
+        return "LayerIngestReport{" +
+                "shpPath='" + shpPath + '\'' +
+                ", tableName='" + tableName + '\'' +
+                ", rows=" + rows +
+                ", bytes=" + bytes +
+                ", elapsedMillis=" + elapsedMillis +
+                ", success=" + success +
+                ", errorMessage='" + errorMessage + '\'' +
+                '}';
+    }
+}
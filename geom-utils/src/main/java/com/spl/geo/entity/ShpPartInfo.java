@@ -0,0 +1,112 @@
+package com.spl.geo.entity;
+
+/**
+ * 分卷导出的shp信息，写入清单文件
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/4/3
+ */
+public class ShpPartInfo {
+
+    /**
+     * 分卷shp文件路径
+     */
+    private String shpPath;
+
+    /**
+     * 分卷序号，从1开始
+     */
+    private int partNumber;
+
+    /**
+     * 要素数量
+     */
+    private long features;
+
+    /**
+     * shp文件字节数
+     */
+    private long shpBytes;
+
+    /**
+     * dbf文件字节数
+     */
+    private long dbfBytes;
+
+    /**
+     * 按主键范围并行导出时的主键范围，包含开始不包含结束，顺序导出时为null
+     */
+    private Long minKey;
+
+    private Long maxKey;
+
+    /**
+     * 要素范围，没有要素时为null
+     */
+    private double[] bbox;
+
+    public String getShpPath() {
+        return shpPath;
+    }
+
+    public void setShpPath(String shpPath) {
+        this.shpPath = shpPath;
+    }
+
+    public int getPartNumber() {
+        return partNumber;
+    }
+
+    public void setPartNumber(int partNumber) {
+        this.partNumber = partNumber;
+    }
+
+    public long getFeatures() {
+        return features;
+    }
+
+    public void setFeatures(long features) {
+        this.features = features;
+    }
+
+    public long getShpBytes() {
+        return shpBytes;
+    }
+
+    public void setShpBytes(long shpBytes) {
+        this.shpBytes = shpBytes;
+    }
+
+    public long getDbfBytes() {
+        return dbfBytes;
+    }
+
+    public void setDbfBytes(long dbfBytes) {
+        this.dbfBytes = dbfBytes;
+    }
+
+    public Long getMinKey() {
+        return minKey;
+    }
+
+    public void setMinKey(Long minKey) {
+        this.minKey = minKey;
+    }
+
+    public Long getMaxKey() {
+        return maxKey;
+    }
+
+    public void setMaxKey(Long maxKey) {
+        this.maxKey = maxKey;
+    }
+
+    public double[] getBbox() {
+        return bbox;
+    }
+
+    public void setBbox(double[] bbox) {
+        this.bbox = bbox;
+    }
+}
@@ -0,0 +1,114 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.vector.enums.IngestMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 根据写入的实际情况调整每批读取的要素数量，使每批的估算字节数或写入耗时接近目标值。
+ * 点图层每个要素很小，可以加大批次；大面要素单个很大，减小批次避免单条语句过大。
+ * 写入线程记录每批结果，读取线程获取下一批大小，每次最多调整为原来的一半或两倍
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/24
+ */
+class AdaptiveBatchSizer {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveBatchSizer.class);
+
+    /**
+     * 平滑系数，新一批的结果所占的权重
+     */
+    private static final double SMOOTHING = 0.3;
+
+    /**
+     * 变化小于当前批次大小的该比例时不调整
+     */
+    private static final double MIN_CHANGE = 0.1;
+
+    private final long targetBatchBytes;
+
+    private final long targetFlushNanos;
+
+    private final int minBatchSize;
+
+    private final int maxBatchSize;
+
+    private volatile int batchSize;
+
+    private double bytesPerRow;
+
+    private double nanosPerRow;
+
+    AdaptiveBatchSizer(Shp2DbOptions options) {
+        this.targetBatchBytes = options.getTargetBatchBytes();
+        if (options.getIngestMode() == IngestMode.COPY && options.getTargetFlushMillis() > 0) {
+            //COPY模式每批只写入缓冲区，数据在缓冲区满或提交时才发送，写入耗时无法按批次衡量
+            log.warn("COPY模式不支持按写入耗时调整批次大小，忽略targetFlushMillis");
+            this.targetFlushNanos = 0;
+        } else {
+            this.targetFlushNanos = TimeUnit.MILLISECONDS.toNanos(options.getTargetFlushMillis());
+        }
+        this.minBatchSize = Math.max(options.getMinBatchSize(), 1);
+        this.maxBatchSize = Math.max(options.getMaxBatchSize(), minBatchSize);
+        this.batchSize = isAdaptive() ? clamp(options.getBatchSize()) : options.getBatchSize();
+    }
+
+    /**
+     * @return 是否设置了目标字节数或目标写入耗时
+     */
+    boolean isAdaptive() {
+        return targetBatchBytes > 0 || targetFlushNanos > 0;
+    }
+
+    /**
+     * @return 下一批读取的要素数量
+     */
+    int nextBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 记录一批数据的写入结果并调整批次大小
+     *
+     * @param rows  行数
+     * @param bytes 估算的字节数
+     * @param nanos 写入耗时(纳秒)
+     */
+    synchronized void record(int rows, long bytes, long nanos) {
+        if (!isAdaptive() || rows <= 0) {
+            return;
+        }
+        bytesPerRow = smooth(bytesPerRow, (double) bytes / rows);
+        nanosPerRow = smooth(nanosPerRow, (double) nanos / rows);
+
+        int current = batchSize;
+        double target = Double.MAX_VALUE;
+        if (targetBatchBytes > 0 && bytesPerRow > 0) {
+            target = Math.min(target, targetBatchBytes / bytesPerRow);
+        }
+        if (targetFlushNanos > 0 && nanosPerRow > 0) {
+            target = Math.min(target, targetFlushNanos / nanosPerRow);
+        }
+        if (target == Double.MAX_VALUE) {
+            return;
+        }
+        int next = clamp((int) Math.max(current / 2.0, Math.min(current * 2.0, target)));
+        if (Math.abs(next - current) >= current * MIN_CHANGE) {
+            batchSize = next;
+            log.debug("批次大小由{}调整为{}，平均每行{}字节，每行写入耗时{}μs", current, next,
+                    Math.round(bytesPerRow), Math.round(nanosPerRow / 1000));
+        }
+    }
+
+    private static double smooth(double average, double value) {
+        return average == 0 ? value : average + SMOOTHING * (value - average);
+    }
+
+    private int clamp(int size) {
+        return Math.min(Math.max(size, minBatchSize), maxBatchSize);
+    }
+}
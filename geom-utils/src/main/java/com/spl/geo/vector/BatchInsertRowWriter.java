@@ -0,0 +1,84 @@
+package com.spl.geo.vector;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.util.List;
+
+/**
+ * 通过JdbcTemplate.batchUpdate批量插入，地理要素转换为wkt。
+ * 未设置提交间隔时每批自动提交；设置后在写入线程上开启事务，达到提交间隔的行数或字节数时提交
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/6
+ */
+class BatchInsertRowWriter implements FeatureRowWriter {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String insertSql;
+
+    private final int geomIndex;
+
+    private final CommitInterval commitInterval;
+
+    private final DataSourceTransactionManager transactionManager;
+
+    private TransactionStatus transaction;
+
+    BatchInsertRowWriter(JdbcTemplate jdbcTemplate, String insertSql, int geomIndex, CommitInterval commitInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.insertSql = insertSql;
+        this.geomIndex = geomIndex;
+        this.commitInterval = commitInterval;
+        this.transactionManager = commitInterval.isEnabled() ? new DataSourceTransactionManager(jdbcTemplate.getDataSource()) : null;
+    }
+
+    @Override
+    public void write(FeatureBatch<Object[]> batch) {
+        if (transactionManager != null && transaction == null) {
+            transaction = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        }
+        boolean commitDue = transactionManager != null && commitInterval.add(batch);
+        List<Object[]> batchValueList = batch.getItems();
+        //如果是地理要素字段，必须用toString()方法
+        if (geomIndex >= 0) {
+            for (Object[] row : batchValueList) {
+                if (row[geomIndex] != null) {
+                    row[geomIndex] = row[geomIndex].toString();
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate(insertSql, batchValueList);
+        if (commitDue) {
+            commit();
+        }
+    }
+
+    @Override
+    public void finish() {
+        //未设置提交间隔时每批已提交
+        if (transaction != null) {
+            commit();
+        }
+    }
+
+    @Override
+    public void close() {
+        //连接由JdbcTemplate管理，未提交的事务回滚
+        if (transaction != null) {
+            TransactionStatus status = transaction;
+            transaction = null;
+            transactionManager.rollback(status);
+        }
+    }
+
+    private void commit() {
+        TransactionStatus status = transaction;
+        transaction = null;
+        transactionManager.commit(status);
+    }
+}
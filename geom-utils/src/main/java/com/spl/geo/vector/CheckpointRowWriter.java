@@ -0,0 +1,48 @@
+package com.spl.geo.vector;
+
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Supplier;
+
+/**
+ * 每批数据与入库进度在同一事务中提交
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/10
+ */
+class CheckpointRowWriter implements FeatureRowWriter {
+
+    private final Supplier<FeatureRowWriter> writerFactory;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Shp2DbCheckpoint checkpoint;
+
+    CheckpointRowWriter(Supplier<FeatureRowWriter> writerFactory, TransactionTemplate transactionTemplate, Shp2DbCheckpoint checkpoint) {
+        this.writerFactory = writerFactory;
+        this.transactionTemplate = transactionTemplate;
+        this.checkpoint = checkpoint;
+    }
+
+    @Override
+    public void write(FeatureBatch<Object[]> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (FeatureRowWriter writer = writerFactory.get()) {
+                writer.write(batch);
+                writer.finish();
+            }
+            checkpoint.record(batch);
+        });
+    }
+
+    @Override
+    public void finish() {
+        //每批已单独提交
+    }
+
+    @Override
+    public void close() {
+        //每批的写入器已关闭
+    }
+}
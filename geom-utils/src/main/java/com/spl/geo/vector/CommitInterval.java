@@ -0,0 +1,54 @@
+package com.spl.geo.vector;
+
+/**
+ * 写入器的提交间隔，累计写入的行数或估算字节数达到阈值时提交一次，每个写入器一个实例
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/24
+ */
+class CommitInterval {
+
+    private final long commitRows;
+
+    private final long commitBytes;
+
+    private long rows;
+
+    private long bytes;
+
+    /**
+     * @param commitRows  提交间隔的行数，小于等于0时不按行数提交
+     * @param commitBytes 提交间隔的字节数，小于等于0时不按字节数提交
+     */
+    CommitInterval(long commitRows, long commitBytes) {
+        this.commitRows = commitRows;
+        this.commitBytes = commitBytes;
+    }
+
+    /**
+     * @return 是否设置了提交间隔，未设置时每批单独提交
+     */
+    boolean isEnabled() {
+        return commitRows > 0 || commitBytes > 0;
+    }
+
+    /**
+     * 累计一批数据，需要在写入前调用，写入后地理要素可能已被转换为文本
+     *
+     * @param batch 行数据
+     * @return 达到提交间隔时返回true，同时重新开始计数
+     */
+    boolean add(FeatureBatch<Object[]> batch) {
+        rows += batch.size();
+        if (commitBytes > 0) {
+            bytes += FeatureRowEncoder.estimateBytes(batch);
+        }
+        if ((commitRows > 0 && rows >= commitRows) || (commitBytes > 0 && bytes >= commitBytes)) {
+            rows = 0;
+            bytes = 0;
+            return true;
+        }
+        return false;
+    }
+}
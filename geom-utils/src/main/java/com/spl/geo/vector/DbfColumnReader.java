@@ -0,0 +1,445 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.DbfException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按列直接读取dbf属性，打开时根据字段描述计算一次每个字段在记录中的偏移，之后只解码指定的列。
+ * 记录通过内存映射按窗口读取，数值直接从字节解析，不经过字符串和包装类型。
+ * 用法：
+ * <pre>
+ * try (DbfColumnReader reader = ReadShpUtils.openColumnReader(shpPath, null, "DLBM", "TBMJ")) {
+ *     while (reader.next()) {
+ *         String dlbm = reader.getString(0);
+ *         double tbmj = reader.getDouble(1);
+ *     }
+ * }
+ * </pre>
+ * 列序号为打开时指定的字段顺序，从0开始。已删除的记录自动跳过。非线程安全
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/4/7
+ */
+public class DbfColumnReader implements AutoCloseable {
+
+    /**
+     * 每次映射的最大字节数
+     */
+    private static final int WINDOW_BYTES = 64 * 1024 * 1024;
+
+    private static final int FIELD_DESCRIPTOR_BYTES = 32;
+
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+            100000000L, 1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+            100000000000000L, 1000000000000000L};
+
+    private final FileChannel channel;
+
+    private final Charset charset;
+
+    private final List<DbfFieldDef> fieldDefs;
+
+    private final int recordCount;
+
+    private final int headerLength;
+
+    private final int recordLength;
+
+    /**
+     * 每个窗口的记录数
+     */
+    private final int windowRecords;
+
+    /**
+     * 选中列在记录中的偏移和长度、类型
+     */
+    private final int[] columnOffsets;
+
+    private final int[] columnLengths;
+
+    private final byte[] columnTypes;
+
+    private byte[] stringBuffer = new byte[256];
+
+    private MappedByteBuffer window;
+
+    private int windowStart;
+
+    private int windowEnd;
+
+    private int recordIndex = -1;
+
+    /**
+     * 当前记录在窗口中的位置
+     */
+    private int recordPosition;
+
+    DbfColumnReader(File dbfFile, Charset charset, String... columns) throws IOException {
+        this.charset = charset;
+        this.channel = FileChannel.open(dbfFile.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(FIELD_DESCRIPTOR_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            this.recordCount = header.getInt(4);
+            this.headerLength = header.getShort(8) & 0xFFFF;
+            this.recordLength = header.getShort(10) & 0xFFFF;
+            if (recordLength == 0 || headerLength < FIELD_DESCRIPTOR_BYTES) {
+                throw new DbfException("dbf文件头无效：" + dbfFile.getAbsolutePath());
+            }
+            this.windowRecords = Math.max(WINDOW_BYTES / recordLength, 1);
+
+            //字段描述从32字节开始，每个32字节，以0x0D结束；记录第一个字节为删除标记
+            ByteBuffer fieldBuffer = ByteBuffer.allocate(headerLength - FIELD_DESCRIPTOR_BYTES);
+            readFully(fieldBuffer, FIELD_DESCRIPTOR_BYTES);
+            List<DbfFieldDef> defs = new ArrayList<>();
+            List<int[]> layouts = new ArrayList<>();
+            int offset = 1;
+            byte[] nameBytes = new byte[11];
+            for (int pos = 0; pos + FIELD_DESCRIPTOR_BYTES <= fieldBuffer.limit() && fieldBuffer.get(pos) != 0x0D; pos += FIELD_DESCRIPTOR_BYTES) {
+                fieldBuffer.position(pos);
+                fieldBuffer.get(nameBytes);
+                int nameLength = 0;
+                while (nameLength < nameBytes.length && nameBytes[nameLength] != 0) {
+                    nameLength++;
+                }
+                String name = new String(nameBytes, 0, nameLength, charset).trim();
+                byte type = fieldBuffer.get(pos + 11);
+                int length = fieldBuffer.get(pos + 16) & 0xFF;
+                int decimal = fieldBuffer.get(pos + 17) & 0xFF;
+                defs.add(new DbfFieldDef(name, typeName(type), length, decimal));
+                layouts.add(new int[]{offset, length, type});
+                offset += length;
+            }
+            this.fieldDefs = Collections.unmodifiableList(defs);
+
+            columnOffsets = new int[columns.length];
+            columnLengths = new int[columns.length];
+            columnTypes = new byte[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                int fieldIndex = indexOf(defs, columns[i]);
+                if (fieldIndex < 0) {
+                    throw new DbfException("dbf中不存在字段" + columns[i]);
+                }
+                int[] layout = layouts.get(fieldIndex);
+                columnOffsets[i] = layout[0];
+                columnLengths[i] = layout[1];
+                columnTypes[i] = (byte) layout[2];
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return 全部字段定义，按dbf中的顺序
+     */
+    public List<DbfFieldDef> getFieldDefs() {
+        return fieldDefs;
+    }
+
+    /**
+     * @return 文件头中的记录数，包含已删除的记录
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return 当前记录的序号，从0开始，与shp中的记录顺序一致
+     */
+    public int getRecordIndex() {
+        return recordIndex;
+    }
+
+    /**
+     * 移动到下一条未删除的记录
+     *
+     * @return 没有记录时返回false
+     */
+    public boolean next() {
+        while (++recordIndex < recordCount) {
+            if (recordIndex >= windowEnd) {
+                mapWindow(recordIndex);
+            }
+            recordPosition = (recordIndex - windowStart) * recordLength;
+            if (window.get(recordPosition) != '*') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 定位到指定序号的记录，之后调用next读取该记录
+     *
+     * @param index 记录序号，从0开始
+     */
+    public void seek(int index) {
+        if (index < 0 || index > recordCount) {
+            throw new DbfException("记录序号" + index + "超出范围");
+        }
+        recordIndex = index - 1;
+        if (index < windowStart || index >= windowEnd) {
+            windowEnd = 0;
+        }
+    }
+
+    /**
+     * @param column 列序号
+     * @return 值是否为空，空白字符或数值字段的*号填充视为空
+     */
+    public boolean isNull(int column) {
+        int start = recordPosition + columnOffsets[column];
+        int end = start + columnLengths[column];
+        for (int i = start; i < end; i++) {
+            byte b = window.get(i);
+            if (b != ' ' && b != 0 && b != '*') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取整数，空值返回0，有小数时截断
+     *
+     * @param column 列序号
+     */
+    public long getLong(int column) {
+        int i = recordPosition + columnOffsets[column];
+        int end = i + columnLengths[column];
+        while (i < end && window.get(i) == ' ') {
+            i++;
+        }
+        boolean negative = false;
+        if (i < end && (window.get(i) == '-' || window.get(i) == '+')) {
+            negative = window.get(i) == '-';
+            i++;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = window.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 读取浮点数，空值返回NaN
+     *
+     * @param column 列序号
+     */
+    public double getDouble(int column) {
+        int start = recordPosition + columnOffsets[column];
+        int end = start + columnLengths[column];
+        int i = start;
+        while (i < end && window.get(i) == ' ') {
+            i++;
+        }
+        while (end > i && (window.get(end - 1) == ' ' || window.get(end - 1) == 0)) {
+            end--;
+        }
+        if (i == end || window.get(i) == '*') {
+            return Double.NaN;
+        }
+        boolean negative = false;
+        if (window.get(i) == '-' || window.get(i) == '+') {
+            negative = window.get(i) == '-';
+            i++;
+        }
+        //有效数字不超过15位时整数部分和小数部分合并为long后除以10的幂，结果精确；否则按字符串解析
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (int p = i; p < end; p++) {
+            byte b = window.get(p);
+            if (b == '.' && scale < 0) {
+                scale = 0;
+            } else if (b >= '0' && b <= '9') {
+                if (digits > 0 || b != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else {
+                return parseDouble(start, end);
+            }
+            if (digits >= POWERS_OF_TEN.length || scale >= POWERS_OF_TEN.length) {
+                return parseDouble(start, end);
+            }
+        }
+        double value = scale > 0 ? (double) mantissa / POWERS_OF_TEN[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * 读取逻辑值，T、t、Y、y为真
+     *
+     * @param column 列序号
+     */
+    public boolean getBoolean(int column) {
+        byte b = window.get(recordPosition + columnOffsets[column]);
+        return b == 'T' || b == 't' || b == 'Y' || b == 'y';
+    }
+
+    /**
+     * 读取日期，格式为yyyyMMdd
+     *
+     * @param column 列序号
+     * @return 距1970-01-01的天数，空值或日期无效时返回Long.MIN_VALUE
+     */
+    public long getEpochDay(int column) {
+        int start = recordPosition + columnOffsets[column];
+        if (columnLengths[column] < 8) {
+            return Long.MIN_VALUE;
+        }
+        int value = 0;
+        for (int i = start; i < start + 8; i++) {
+            int digit = window.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+        }
+        if (value == 0) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return LocalDate.of(value / 10000, value / 100 % 100, value % 100).toEpochDay();
+        } catch (DateTimeException e) {
+            //不存在的日期(如20230231)按空值处理
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * 读取日期
+     *
+     * @param column 列序号
+     * @return 日期，空值返回null
+     */
+    public LocalDate getDate(int column) {
+        long epochDay = getEpochDay(column);
+        return epochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * 读取字符串，去掉首尾空白
+     *
+     * @param column 列序号
+     * @return 字符串，空值返回null
+     */
+    public String getString(int column) {
+        int start = recordPosition + columnOffsets[column];
+        int end = start + columnLengths[column];
+        while (start < end && window.get(start) == ' ') {
+            start++;
+        }
+        while (end > start && (window.get(end - 1) == ' ' || window.get(end - 1) == 0)) {
+            end--;
+        }
+        if (start == end) {
+            return null;
+        }
+        return new String(copy(start, end), 0, end - start, charset);
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new DbfException(e.getMessage(), e);
+        }
+    }
+
+    private void mapWindow(int firstRecord) {
+        int records = Math.min(windowRecords, recordCount - firstRecord);
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, headerLength + (long) firstRecord * recordLength, (long) records * recordLength);
+        } catch (IOException e) {
+            throw new DbfException(e.getMessage(), e);
+        }
+        windowStart = firstRecord;
+        windowEnd = firstRecord + records;
+    }
+
+    private double parseDouble(int start, int end) {
+        try {
+            return Double.parseDouble(new String(copy(start, end), 0, end - start, charset).trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private byte[] copy(int start, int end) {
+        int length = end - start;
+        if (stringBuffer.length < length) {
+            stringBuffer = new byte[Math.max(length, stringBuffer.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            stringBuffer[i] = window.get(start + i);
+        }
+        return stringBuffer;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    private static int indexOf(List<DbfFieldDef> defs, String column) {
+        for (int i = 0; i < defs.size(); i++) {
+            if (defs.get(i).getFieldName().equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 与javadbf的DBFDataType名称一致，便于和parseDbfField的结果统一处理
+     */
+    private static String typeName(byte type) {
+        switch (type) {
+            case 'C':
+                return "CHARACTER";
+            case 'N':
+                return "NUMERIC";
+            case 'F':
+                return "FLOATING_POINT";
+            case 'D':
+                return "DATE";
+            case 'L':
+                return "LOGICAL";
+            default:
+                return String.valueOf((char) type);
+        }
+    }
+}
@@ -7,7 +7,7 @@ package com.spl.geo.vector;
  * @version 1.0
  * @date 2022/9/1
  */
-class DbfFieldDef {
+public class DbfFieldDef {
 
 
     /**
@@ -5,11 +5,23 @@ import com.linuxense.javadbf.DBFReader;
 import com.spl.geo.exception.DbfException;
 import org.apache.commons.lang3.StringUtils;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -26,8 +38,162 @@ class DbfUtils {
 
     public static final String DBF_SUFFIX = ".dbf";
 
+    private static final Logger log = LoggerFactory.getLogger(DbfUtils.class);
+
+
+    /**
+     * 判断编码时最多抽样的记录数
+     */
+    private static final int SAMPLE_RECORDS = 2000;
+
+    /**
+     * 判断编码时最多读取的字节数
+     */
+    private static final int SAMPLE_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * 判断编码时最多抽样的非ASCII字符串数
+     */
+    private static final int SAMPLE_VALUES = 500;
+
+    private static final Charset GBK = Charset.forName("GBK");
+
 
     public static Map<String, DbfFieldDef> parseDbfField(String path) {
+        File dbfFile = getDbfFile(path);
+
+        //读取文件
+        try (InputStream fis = new FileInputStream(dbfFile)) {
+            return parseDbfField(fis);
+        } catch (DbfException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DbfException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从dbf输入流读取字段定义，可用于zip条目，输入流由调用方关闭
+     *
+     * @param in 位于dbf开头的输入流
+     * @return 字段名称与字段定义
+     */
+    static Map<String, DbfFieldDef> parseDbfField(InputStream in) {
+        try {
+            DBFReader reader = new DBFReader(in, Charset.forName("GBK"));
+            int fieldCount = reader.getFieldCount();
+            Map<String, DbfFieldDef> dbfFieldDefMap = new HashMap<>(fieldCount);
+            for (int i = 0; i < fieldCount; i++) {
+                DBFField field = reader.getField(i);
+                dbfFieldDefMap.put(field.getName(), new DbfFieldDef(field.getName(), field.getType().name(), field.getLength(), field.getDecimalCount()));
+            }
+            return dbfFieldDefMap;
+        } catch (Exception e) {
+            throw new DbfException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 打开按列读取dbf属性的读取器，只解码指定的字段
+     *
+     * @param path    dbf或者shp文件路径
+     * @param charset 属性编码，为空时自动判断，无法判断时按GBK
+     * @param columns 需要读取的字段，不区分大小写，读取时按此顺序的序号取值
+     * @return 读取器，使用后需关闭
+     */
+    public static DbfColumnReader openColumnReader(String path, Charset charset, String... columns) {
+        File dbfFile = getDbfFile(path);
+        if (charset == null) {
+            charset = detectCharset(path);
+        }
+        try {
+            return new DbfColumnReader(dbfFile, charset == null ? GBK : charset, columns);
+        } catch (IOException e) {
+            throw new DbfException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 抽样读取dbf字符字段的原始字节判断编码，只区分GBK与UTF-8
+     *
+     * @param path dbf或者shp文件路径
+     * @return 编码格式，字符字段都是ASCII时无法判断，返回null
+     */
+    public static Charset detectCharset(String path) {
+        File dbfFile = getDbfFile(path);
+        try (FileChannel channel = FileChannel.open(dbfFile.toPath(), StandardOpenOption.READ)) {
+            return detectCharset(channel);
+        } catch (IOException e) {
+            throw new DbfException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 从dbf开头顺序读取并抽样判断编码，可用于zip条目等不能随机读取的输入，通道由调用方关闭
+     *
+     * @param channel 位于dbf开头的通道
+     * @return 编码格式，字符字段都是ASCII时无法判断，返回null
+     */
+    static Charset detectCharset(ReadableByteChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header);
+        int recordCount = header.getInt(4);
+        int headerLength = header.getShort(8) & 0xFFFF;
+        int recordLength = header.getShort(10) & 0xFFFF;
+
+        //字段描述从32字节开始，每个32字节，以0x0D结束
+        ByteBuffer fieldBuffer = ByteBuffer.allocate(headerLength - 32);
+        readFully(channel, fieldBuffer);
+        List<int[]> charFields = new ArrayList<>();
+        int offset = 1;
+        for (int pos = 0; pos + 32 <= fieldBuffer.limit() && fieldBuffer.get(pos) != 0x0D; pos += 32) {
+            int length = fieldBuffer.get(pos + 16) & 0xFF;
+            if (fieldBuffer.get(pos + 11) == 'C') {
+                charFields.add(new int[]{offset, length});
+            }
+            offset += length;
+        }
+        if (charFields.isEmpty() || recordLength == 0) {
+            return null;
+        }
+
+        int sampleRecords = Math.min(Math.min(recordCount, SAMPLE_RECORDS), Math.max(SAMPLE_BYTES / recordLength, 1));
+        ByteBuffer records = ByteBuffer.allocate(sampleRecords * recordLength);
+        readFully(channel, records);
+        byte[] record = new byte[recordLength];
+        int samples = 0;
+        int utf8Invalid = 0;
+        int gbkInvalid = 0;
+        for (int i = 0; i < records.limit() / recordLength && samples < SAMPLE_VALUES; i++) {
+            records.get(record);
+            //跳过已删除的记录
+            if (record[0] == '*') {
+                continue;
+            }
+            for (int[] field : charFields) {
+                int start = field[0];
+                int end = Math.min(start + field[1], recordLength);
+                if (isAscii(record, start, end)) {
+                    continue;
+                }
+                samples++;
+                if (!isUtf8(record, start, end)) {
+                    utf8Invalid++;
+                }
+                if (!isGbk(record, start, end)) {
+                    gbkInvalid++;
+                }
+            }
+        }
+        if (samples == 0) {
+            return null;
+        }
+        log.debug("dbf编码抽样{}个字符串，非UTF-8{}个，非GBK{}个", samples, utf8Invalid, gbkInvalid);
+        //GBK字节序列很少能构成合法的UTF-8，全部为合法UTF-8时判断为UTF-8
+        return utf8Invalid == 0 || utf8Invalid < gbkInvalid ? StandardCharsets.UTF_8 : GBK;
+    }
+
+    private static File getDbfFile(String path) {
         if (StringUtils.isEmpty(path)) {
             throw new DbfException("输入路径不能为为空");
         }
@@ -40,20 +206,86 @@ class DbfUtils {
                 throw new DbfException("输入的shp文件");
             }
         }
+        return dbfFile;
+    }
 
-        //读取文件
-        try (InputStream fis = new FileInputStream(dbfFile);
-             DBFReader reader = new DBFReader(fis, Charset.forName("GBK"))) {
+    /**
+     * 顺序读满缓冲区或到达末尾，读取后切换为读模式
+     */
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+    }
 
-            int fieldCount = reader.getFieldCount();
-            Map<String, DbfFieldDef> dbfFieldDefMap = new HashMap<>(fieldCount);
-            for (int i = 0; i < fieldCount; i++) {
-                DBFField field = reader.getField(i);
-                dbfFieldDefMap.put(field.getName(), new DbfFieldDef(field.getName(), field.getType().name(), field.getLength(), field.getDecimalCount()));
+    private static boolean isAscii(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < 0) {
+                return false;
             }
-            return dbfFieldDefMap;
-        } catch (Exception e) {
-            throw new DbfException(e.getMessage(), e);
         }
+        return true;
+    }
+
+    /**
+     * 是否为合法的UTF-8字节序列，字段截断导致末尾不完整的字符视为合法
+     */
+    private static boolean isUtf8(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end) {
+            int b = bytes[i] & 0xFF;
+            int trail;
+            if (b < 0x80) {
+                i++;
+                continue;
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                trail = 1;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                trail = 2;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                trail = 3;
+            } else {
+                return false;
+            }
+            for (int j = 1; j <= trail; j++) {
+                if (i + j >= end) {
+                    return true;
+                }
+                if ((bytes[i + j] & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            i += trail + 1;
+        }
+        return true;
+    }
+
+    /**
+     * 是否为合法的GBK字节序列，字段截断导致末尾不完整的字符视为合法
+     */
+    private static boolean isGbk(byte[] bytes, int start, int end) {
+        int i = start;
+        while (i < end) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            if (b == 0x80 || b == 0xFF) {
+                return false;
+            }
+            if (i + 1 >= end) {
+                return true;
+            }
+            int trail = bytes[i + 1] & 0xFF;
+            if (trail < 0x40 || trail == 0x7F || trail == 0xFF) {
+                return false;
+            }
+            i += 2;
+        }
+        return true;
     }
 }
@@ -0,0 +1,119 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import net.postgis.jdbc.PGgeometry;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ByteArrayInStream;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKTReader;
+import org.postgresql.util.PGobject;
+
+/**
+ * 将数据库返回的地理要素解析为JTS对象，优先按EWKB二进制解析。
+ * PostGIS的geometry字段默认以十六进制EWKB文本返回，直接从字节解码到复用的缓冲区后解析，不生成中间字符串；
+ * 查询中使用ST_AsEWKB(geom)时返回bytea，直接解析。非线程安全，每个导出任务创建一个
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/31
+ */
+class EwkbGeometryReader {
+
+    private final WKBReader wkbReader = new WKBReader();
+
+    private final WKTReader wktReader = new WKTReader();
+
+    private final ByteArrayInStream inStream = new ByteArrayInStream(new byte[0]);
+
+    private byte[] buffer = new byte[4096];
+
+    /**
+     * 解析地理要素
+     *
+     * @param value bytea或十六进制EWKB的字节、PGobject、PGgeometry、十六进制EWKB或(E)WKT字符串
+     * @return 地理要素，值为空时返回null
+     */
+    Geometry read(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            if (value instanceof Geometry) {
+                return (Geometry) value;
+            }
+            if (value instanceof byte[]) {
+                return readBytes((byte[]) value);
+            }
+            if (value instanceof PGgeometry) {
+                //注册了PostGIS类型时驱动已解析为EWKT，只能按文本解析
+                return readText(value.toString());
+            }
+            if (value instanceof PGobject) {
+                return readText(((PGobject) value).getValue());
+            }
+            return readText(value.toString());
+        } catch (ShpException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 解析字节，WKB第一个字节为字节序0或1，十六进制文本第一个字节为字符'0'
+     */
+    Geometry readBytes(byte[] bytes) throws Exception {
+        if (bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != '0') {
+            return wkbReader.read(bytes);
+        }
+        int length = bytes.length / 2;
+        ensureBuffer(length);
+        for (int i = 0; i < length; i++) {
+            buffer[i] = (byte) ((hexValue(bytes[i * 2]) << 4) | hexValue(bytes[i * 2 + 1]));
+        }
+        return readBuffer();
+    }
+
+    private Geometry readText(String text) throws Exception {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        if (text.charAt(0) != '0') {
+            //WKT或EWKT，去掉SRID=4490;前缀
+            return wktReader.read(text.substring(text.indexOf(';') + 1));
+        }
+        int length = text.length() / 2;
+        ensureBuffer(length);
+        for (int i = 0; i < length; i++) {
+            buffer[i] = (byte) ((hexValue(text.charAt(i * 2)) << 4) | hexValue(text.charAt(i * 2 + 1)));
+        }
+        return readBuffer();
+    }
+
+    private Geometry readBuffer() throws Exception {
+        inStream.setBytes(buffer);
+        return wkbReader.read(inStream);
+    }
+
+    private void ensureBuffer(int length) {
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+    }
+
+    private static int hexValue(int c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        throw new ShpException("无效的十六进制EWKB字符：" + (char) c);
+    }
+}
@@ -0,0 +1,54 @@
+package com.spl.geo.vector;
+
+import java.util.List;
+
+/**
+ * 一批连续的要素或行数据，startIndex为第一条要素在shp中的序号(从0开始)
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/10
+ */
+class FeatureBatch<T> {
+
+    private final long startIndex;
+
+    private final List<T> items;
+
+    /**
+     * 估算的字节数，未估算时为-1
+     */
+    private long estimatedBytes = -1;
+
+    FeatureBatch(long startIndex, List<T> items) {
+        this.startIndex = startIndex;
+        this.items = items;
+    }
+
+    long getStartIndex() {
+        return startIndex;
+    }
+
+    /**
+     * @return 最后一条要素之后的序号
+     */
+    long getEndIndex() {
+        return startIndex + items.size();
+    }
+
+    List<T> getItems() {
+        return items;
+    }
+
+    int size() {
+        return items.size();
+    }
+
+    long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    void setEstimatedBytes(long estimatedBytes) {
+        this.estimatedBytes = estimatedBytes;
+    }
+}
@@ -0,0 +1,92 @@
+package com.spl.geo.vector;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按批读取要素，跳过已提交的序号区间，每批内的要素序号连续，每批的数量由batchSizer确定
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/10
+ */
+class FeatureBatchReader {
+
+    private final SimpleFeatureIterator features;
+
+    private final AdaptiveBatchSizer batchSizer;
+
+    /**
+     * 已提交的区间，key为开始序号，value为结束序号(不包含)
+     */
+    private final Map<Long, Long> committed;
+
+    private final Shp2DbListener listener;
+
+    private long index;
+
+    FeatureBatchReader(SimpleFeatureIterator features, AdaptiveBatchSizer batchSizer, Map<Long, Long> committed, Shp2DbListener listener) {
+        this.features = features;
+        this.batchSizer = batchSizer;
+        this.committed = committed;
+        this.listener = listener;
+    }
+
+    /**
+     * 读取下一批要素
+     *
+     * @return 要素批次，读取完毕返回null
+     */
+    FeatureBatch<SimpleFeature> next() {
+        long start = System.nanoTime();
+        int batchSize = batchSizer.nextBatchSize();
+        List<SimpleFeature> items = new ArrayList<>(batchSize);
+        long startIndex = index;
+        while (items.size() < batchSize) {
+            Long committedEnd = committed.get(index);
+            if (committedEnd != null) {
+                if (!items.isEmpty()) {
+                    break;
+                }
+                skipTo(committedEnd);
+                startIndex = index;
+                continue;
+            }
+            if (!features.hasNext()) {
+                break;
+            }
+            items.add(features.next());
+            index++;
+        }
+        if (items.isEmpty()) {
+            return null;
+        }
+        listener.onRead(items.size(), System.nanoTime() - start);
+        return new FeatureBatch<>(startIndex, items);
+    }
+
+    /**
+     * 跳到指定序号，支持索引定位时直接通过shx定位
+     */
+    private void skipTo(long target) {
+        if (features instanceof ShpIndexedFeatureReader) {
+            ((ShpIndexedFeatureReader) features).seek(target);
+            index = target;
+            return;
+        }
+        if (features instanceof ShpZipFeatureReader) {
+            ((ShpZipFeatureReader) features).seek(target);
+            index = target;
+            return;
+        }
+        while (index < target && features.hasNext()) {
+            features.next();
+            index++;
+        }
+        index = target;
+    }
+}
@@ -0,0 +1,75 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBWriter;
+import org.opengis.feature.simple.SimpleFeature;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+/**
+ * 计算要素内容的哈希，由地理要素的WKB和各属性值组成，同一要素在不同批次导入中的哈希相同。
+ * 编码线程共用，摘要和WKB编码器按线程缓存
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/27
+ */
+class FeatureHasher {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 属性之间的分隔符和空值标识，避免相邻属性拼接后产生相同的内容
+     */
+    private static final byte SEPARATOR = 0x1F;
+    private static final byte NULL_VALUE = 0x00;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(FeatureHasher::newDigest);
+
+    private static final ThreadLocal<WKBWriter> WKB_WRITER = ThreadLocal.withInitial(() -> new WKBWriter(2));
+
+    private FeatureHasher() {
+    }
+
+    /**
+     * 计算要素的内容哈希，地理要素使用原始坐标
+     *
+     * @param feature 要素
+     * @return 32位十六进制MD5
+     */
+    static String hash(SimpleFeature feature) {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        for (Object attribute : feature.getAttributes()) {
+            if (attribute == null) {
+                digest.update(NULL_VALUE);
+            } else if (attribute instanceof Geometry) {
+                digest.update(WKB_WRITER.get().write((Geometry) attribute));
+            } else if (attribute instanceof Date) {
+                digest.update(Long.toString(((Date) attribute).getTime()).getBytes(StandardCharsets.UTF_8));
+            } else {
+                digest.update(attribute.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update(SEPARATOR);
+        }
+        byte[] bytes = digest.digest();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.common.CoordinatorUtils;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.operation.MathTransform;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 将要素按照建表的字段顺序转换为行数据，可在多个编码线程中共用。
+ * 创建时根据schema为每个字段确定属性下标和取值方式，逐条编码时不再按名称查找属性和匹配字段名。
+ * 字符串由ShapefileDataStore按照cpg文件或者抽样判断的编码直接从dbf字节解码，这里不再转码。
+ * 需要客户端转换坐标时在编码线程中转换，数据库只接收目标坐标的地理要素。
+ * 分区表的分区键和增量导入的内容哈希在编码时计算，分区表写入主表后由数据库路由到对应分区
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/8
+ */
+class FeatureRowEncoder {
+
+    /**
+     * 字段取值方式
+     */
+    private enum Accessor {
+        /**
+         * 地理要素，直接取Geometry对象
+         */
+        GEOMETRY,
+        /**
+         * 分区键，由分区器根据要素计算
+         */
+        PARTITION_KEY,
+        /**
+         * 增量导入时的内容哈希，按原始要素计算
+         */
+        ROW_HASH,
+        /**
+         * 其他属性，空值写入空字符串
+         */
+        VALUE
+    }
+
+    /**
+     * 每个字段在要素中的属性下标
+     */
+    private final int[] attributeIndexes;
+
+    private final Accessor[] accessors;
+
+    private final int geomIndex;
+
+    private final MathTransform mathTransform;
+
+    private final Shp2DbPartitioner partitioner;
+
+    private final Shp2DbListener listener;
+
+    /**
+     * @param schema        要素约束
+     * @param fieldList     建表的字段顺序
+     * @param mathTransform 客户端坐标转换，为null时不转换
+     * @param partitioner   分区器，非分区表为null
+     * @param listener      入库监听，记录每批的编码耗时
+     */
+    FeatureRowEncoder(SimpleFeatureType schema, List<String> fieldList, MathTransform mathTransform, Shp2DbPartitioner partitioner,
+                      Shp2DbListener listener) {
+        this.mathTransform = mathTransform;
+        this.partitioner = partitioner;
+        this.listener = listener;
+        int size = fieldList.size();
+        this.attributeIndexes = new int[size];
+        this.accessors = new Accessor[size];
+        int geomIdx = -1;
+        for (int i = 0; i < size; i++) {
+            String field = fieldList.get(i);
+            attributeIndexes[i] = schema.indexOf(field);
+            if (Shp2Db.isGeomField(field)) {
+                accessors[i] = Accessor.GEOMETRY;
+                geomIdx = i;
+            } else if (Shp2DbPartitioner.PARTITION_COLUMN.equals(field) && attributeIndexes[i] < 0) {
+                accessors[i] = Accessor.PARTITION_KEY;
+            } else if (Shp2DbMerger.HASH_COLUMN.equals(field) && attributeIndexes[i] < 0) {
+                accessors[i] = Accessor.ROW_HASH;
+            } else {
+                accessors[i] = Accessor.VALUE;
+            }
+        }
+        this.geomIndex = geomIdx;
+    }
+
+    /**
+     * @return 地理要素字段在行数据中的下标，没有时返回-1
+     */
+    int getGeomIndex() {
+        return geomIndex;
+    }
+
+    FeatureBatch<Object[]> encode(FeatureBatch<SimpleFeature> batch) {
+        long start = System.nanoTime();
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (SimpleFeature feature : batch.getItems()) {
+            rows.add(encode(feature));
+        }
+        listener.onEncode(batch.size(), System.nanoTime() - start);
+        return new FeatureBatch<>(batch.getStartIndex(), rows);
+    }
+
+    Object[] encode(SimpleFeature feature) {
+        Object[] valueObjArr = new Object[accessors.length];
+        for (int i = 0; i < accessors.length; i++) {
+            if (accessors[i] == Accessor.PARTITION_KEY) {
+                valueObjArr[i] = partitioner.keyOf(feature);
+                continue;
+            }
+            if (accessors[i] == Accessor.ROW_HASH) {
+                valueObjArr[i] = FeatureHasher.hash(feature);
+                continue;
+            }
+            Object attribute = feature.getAttribute(attributeIndexes[i]);
+            switch (accessors[i]) {
+                case GEOMETRY:
+                    valueObjArr[i] = attribute == null || mathTransform == null ? attribute
+                            : CoordinatorUtils.transform((Geometry) attribute, mathTransform);
+                    break;
+                default:
+                    valueObjArr[i] = attribute == null ? "" : attribute;
+            }
+        }
+        return valueObjArr;
+    }
+
+    /**
+     * 估算一批行数据的字节数，结果保存在批次中，同一批次只估算一次。需在写入前调用，写入后地理要素可能已被转换为文本
+     *
+     * @param batch 行数据
+     * @return 估算的字节数
+     */
+    static long estimateBytes(FeatureBatch<Object[]> batch) {
+        long bytes = batch.getEstimatedBytes();
+        if (bytes < 0) {
+            bytes = estimateBytes(batch.getItems());
+            batch.setEstimatedBytes(bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * 估算行数据写入数据库的字节数，地理要素按每个坐标16字节计算，字符串按字符数计算，其他值按8字节计算
+     *
+     * @param rows 行数据
+     * @return 估算的字节数
+     */
+    static long estimateBytes(List<Object[]> rows) {
+        long bytes = 0;
+        for (Object[] row : rows) {
+            for (Object value : row) {
+                if (value instanceof Geometry) {
+                    bytes += ((Geometry) value).getNumPoints() * 16L + 16;
+                } else if (value instanceof CharSequence) {
+                    bytes += ((CharSequence) value).length();
+                } else if (value != null) {
+                    bytes += 8;
+                }
+            }
+        }
+        return bytes;
+    }
+}
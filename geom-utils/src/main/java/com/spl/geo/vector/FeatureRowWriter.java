@@ -0,0 +1,29 @@
+package com.spl.geo.vector;
+
+/**
+ * 要素行写入器，按照建表时的字段顺序按批写入行数据
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/6
+ */
+interface FeatureRowWriter extends AutoCloseable {
+
+    /**
+     * 写入一批行数据，地理要素字段为Geometry对象
+     *
+     * @param batch 行数据批次
+     */
+    void write(FeatureBatch<Object[]> batch);
+
+    /**
+     * 写入完成，提交剩余的数据
+     */
+    void finish();
+
+    /**
+     * 释放资源，未调用finish时放弃未提交的数据
+     */
+    @Override
+    void close();
+}
@@ -5,6 +5,7 @@ import com.spl.geo.exception.GeometryException;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.referencing.CRS;
 import org.locationtech.jts.geom.Geometry;
@@ -16,8 +17,12 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 地理要素处理类
@@ -70,13 +75,57 @@ public class GeometryUtils {
         return wktWriter.write(geometry);
     }
 
+    /**
+     * 要素集合转list，逐个读取要素直接放入list，不经过中间数组；大图层使用collection2Stream逐个处理
+     *
+     * @param simpleFeatureCollection 要素集合
+     * @return 要素list
+     */
     public static List<SimpleFeature> collection2List(SimpleFeatureCollection simpleFeatureCollection) {
-        List<SimpleFeature> featureList = new ArrayList<>(simpleFeatureCollection.size());
-        SimpleFeature[] featureArray = new SimpleFeature[simpleFeatureCollection.size()];
-        featureList.addAll(Arrays.asList(simpleFeatureCollection.toArray(featureArray)));
+        List<SimpleFeature> featureList = new ArrayList<>();
+        try (SimpleFeatureIterator iterator = simpleFeatureCollection.features()) {
+            while (iterator.hasNext()) {
+                featureList.add(iterator.next());
+            }
+        }
         return featureList;
     }
 
+    /**
+     * 要素集合转惰性的要素流，遍历时才逐个读取，内存中只保留当前要素。
+     * 流使用后需关闭以释放文件句柄，用法：
+     * <pre>
+     * try (Stream&lt;SimpleFeature&gt; features = GeometryUtils.collection2Stream(collection)) {
+     *     features.filter(...).forEach(...);
+     * }
+     * </pre>
+     *
+     * @param simpleFeatureCollection 要素集合
+     * @return 顺序要素流
+     */
+    public static Stream<SimpleFeature> collection2Stream(SimpleFeatureCollection simpleFeatureCollection) {
+        return iterator2Stream(simpleFeatureCollection.features());
+    }
+
+    /**
+     * 要素迭代器转惰性的要素流，流关闭时关闭迭代器
+     */
+    static Stream<SimpleFeature> iterator2Stream(SimpleFeatureIterator iterator) {
+        Iterator<SimpleFeature> adapter = new Iterator<SimpleFeature>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public SimpleFeature next() {
+                return iterator.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(adapter, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
     /**
      * wkt转地理要素
      *
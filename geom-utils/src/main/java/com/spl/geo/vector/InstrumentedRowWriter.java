@@ -0,0 +1,58 @@
+package com.spl.geo.vector;
+
+/**
+ * 记录每批数据写入数据库的耗时，自适应批次大小时同时记录估算的字节数用于调整批次。
+ * COPY写入器的每批数据只写入缓冲区，不按批回调onFlush，由写入器在每次结束COPY时回调
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/22
+ */
+class InstrumentedRowWriter implements FeatureRowWriter {
+
+    private final FeatureRowWriter delegate;
+
+    private final Shp2DbListener listener;
+
+    private final AdaptiveBatchSizer batchSizer;
+
+    /**
+     * 每批写入是否为一次数据库往返
+     */
+    private final boolean roundTripPerBatch;
+
+    InstrumentedRowWriter(FeatureRowWriter delegate, Shp2DbListener listener, AdaptiveBatchSizer batchSizer) {
+        this.delegate = delegate;
+        this.listener = listener;
+        this.batchSizer = batchSizer;
+        this.roundTripPerBatch = !(delegate instanceof PgBinaryCopyWriter);
+    }
+
+    @Override
+    public void write(FeatureBatch<Object[]> batch) {
+        //写入时地理要素可能被转换为文本，需在写入前估算，估算结果保存在批次中，提交间隔不再重复估算
+        long bytes = batchSizer.isAdaptive() ? FeatureRowEncoder.estimateBytes(batch) : 0;
+        long start = System.nanoTime();
+        delegate.write(batch);
+        long nanos = System.nanoTime() - start;
+        if (roundTripPerBatch) {
+            listener.onFlush(batch.size(), nanos);
+        }
+        batchSizer.record(batch.size(), bytes, nanos);
+    }
+
+    @Override
+    public void finish() {
+        long start = System.nanoTime();
+        delegate.finish();
+        //COPY的最后一次结束已通过onFlush回调
+        if (roundTripPerBatch) {
+            listener.onFinishWrite(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
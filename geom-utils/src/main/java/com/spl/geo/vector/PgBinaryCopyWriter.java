@@ -0,0 +1,330 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import org.apache.commons.lang3.StringUtils;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBWriter;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * 通过PostgreSQL的COPY协议以二进制格式写入数据，地理要素以EWKB传输。
+ * 连接为自动提交时每次COPY单独提交，设置提交间隔后达到间隔即结束本次COPY并开始新的COPY。
+ * 每批数据只写入缓冲区，每次结束COPY时以onFlush回调与数据库往返的耗时和本次COPY的行数
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/6
+ */
+class PgBinaryCopyWriter implements FeatureRowWriter {
+
+    /**
+     * 二进制COPY的文件头：签名、标志位、扩展区长度
+     */
+    private static final byte[] COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    /**
+     * PostgreSQL日期的起点2000-01-01
+     */
+    private static final long PG_EPOCH_DAY = LocalDate.of(2000, 1, 1).toEpochDay();
+
+    private static final int NUMERIC_POS = 0x0000;
+    private static final int NUMERIC_NEG = 0x4000;
+    private static final int NUMERIC_NAN = 0xC000;
+    private static final BigInteger NBASE = BigInteger.valueOf(10000);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Logger log = LoggerFactory.getLogger(PgBinaryCopyWriter.class);
+
+    /**
+     * 字段的编码类型，与DbfFieldDef.pgFieldDef保持一致
+     */
+    enum ColumnType {
+        GEOMETRY, NUMERIC, DATE, TEXT;
+
+        static ColumnType of(DbfFieldDef dbfFieldDef) {
+            String typeName = dbfFieldDef.getTypeName();
+            if ("NUMERIC".equalsIgnoreCase(typeName)) {
+                return NUMERIC;
+            } else if ("DATE".equalsIgnoreCase(typeName)) {
+                return DATE;
+            } else {
+                return TEXT;
+            }
+        }
+    }
+
+    private final DataSource dataSource;
+
+    private final Connection connection;
+
+    private final String copySql;
+
+    private PGCopyOutputStream copyStream;
+
+    private DataOutputStream out;
+
+    private final ColumnType[] columnTypes;
+
+    private final CommitInterval commitInterval;
+
+    private final int srid;
+
+    private final Shp2DbListener listener;
+
+    private final WKBWriter wkbWriter = new WKBWriter(2, true);
+
+    /**
+     * @param dataSource  数据源，写入期间独占一个连接
+     * @param copySql     COPY ... FROM STDIN (FORMAT binary)语句
+     * @param columnTypes 字段编码类型，顺序与copySql中的字段一致
+     * @param srid           写入的地理要素srid，地理要素需要已经是此坐标
+     * @param commitInterval 提交间隔，未设置时整个写入过程为一次COPY
+     * @param listener       每次结束COPY时回调
+     */
+    PgBinaryCopyWriter(DataSource dataSource, String copySql, ColumnType[] columnTypes, int srid, CommitInterval commitInterval,
+                       Shp2DbListener listener) {
+        this.dataSource = dataSource;
+        this.copySql = copySql;
+        this.columnTypes = columnTypes;
+        this.srid = srid;
+        this.commitInterval = commitInterval;
+        this.listener = listener;
+        this.connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            if (!connection.isWrapperFor(PGConnection.class)) {
+                throw new ShpException("COPY模式需要PostgreSQL的数据库连接");
+            }
+            startCopy();
+        } catch (SQLException | IOException e) {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+            throw new ShpException(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+            throw e;
+        }
+    }
+
+    private void startCopy() throws SQLException, IOException {
+        this.copyStream = new PGCopyOutputStream(connection.unwrap(PGConnection.class), copySql, BUFFER_SIZE);
+        this.out = new DataOutputStream(new BufferedOutputStream(copyStream, BUFFER_SIZE));
+        out.write(COPY_SIGNATURE);
+        out.writeInt(0);
+        out.writeInt(0);
+    }
+
+    @Override
+    public void write(FeatureBatch<Object[]> batch) {
+        try {
+            boolean commitDue = commitInterval.isEnabled() && commitInterval.add(batch);
+            for (Object[] row : batch.getItems()) {
+                out.writeShort(row.length);
+                for (int i = 0; i < row.length; i++) {
+                    writeValue(out, columnTypes[i], row[i], wkbWriter, srid);
+                }
+            }
+            if (commitDue) {
+                endCopy();
+                startCopy();
+            }
+        } catch (IOException | SQLException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void finish() {
+        try {
+            endCopy();
+        } catch (IOException | SQLException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    private void endCopy() throws IOException, SQLException {
+        long start = System.nanoTime();
+        //文件尾
+        out.writeShort(-1);
+        out.flush();
+        long rows = copyStream.endCopy();
+        listener.onFlush((int) Math.min(rows, Integer.MAX_VALUE), System.nanoTime() - start);
+        log.debug("COPY写入数据{}行", rows);
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (copyStream.isActive()) {
+                copyStream.cancelCopy();
+            }
+        } catch (SQLException e) {
+            log.error(e.getMessage(), e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /**
+     * 按COPY二进制格式写入一个字段：4字节长度（空值为-1）加字段内容
+     *
+     * @param out        输出
+     * @param columnType 字段编码类型
+     * @param value      字段值
+     * @param wkbWriter  地理要素的EWKB编码器
+     * @param srid       地理要素的srid
+     */
+    static void writeValue(DataOutput out, ColumnType columnType, Object value, WKBWriter wkbWriter, int srid) throws IOException {
+        switch (columnType) {
+            case GEOMETRY:
+                writeGeometry(out, (Geometry) value, wkbWriter, srid);
+                break;
+            case NUMERIC:
+                if (isNaN(value)) {
+                    writeNaN(out);
+                } else {
+                    writeNumeric(out, toBigDecimal(value));
+                }
+                break;
+            case DATE:
+                writeDate(out, toLocalDate(value));
+                break;
+            default:
+                //与insert模式一致，空值写入空字符串
+                writeBytes(out, value == null ? new byte[0] : value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void writeGeometry(DataOutput out, Geometry geometry, WKBWriter wkbWriter, int srid) throws IOException {
+        if (geometry == null) {
+            out.writeInt(-1);
+            return;
+        }
+        geometry.setSRID(srid);
+        writeBytes(out, wkbWriter.write(geometry));
+    }
+
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeDate(DataOutput out, LocalDate date) throws IOException {
+        if (date == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(4);
+        out.writeInt((int) (date.toEpochDay() - PG_EPOCH_DAY));
+    }
+
+    /**
+     * numeric的二进制格式：位数、权重、符号、小数位数，之后为以10000为基数的各位
+     */
+    private static void writeNumeric(DataOutput out, BigDecimal value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        int sign = value.signum() < 0 ? NUMERIC_NEG : NUMERIC_POS;
+        int dscale = Math.max(value.scale(), 0);
+        BigDecimal abs = value.abs().setScale(dscale);
+
+        //小数部分补齐到4的倍数后，整体按10000进制拆分
+        int fracGroups = (dscale + 3) / 4;
+        BigInteger unscaled = abs.movePointRight(fracGroups * 4).toBigIntegerExact();
+        short[] groups = new short[abs.precision() / 4 + fracGroups + 2];
+        int count = 0;
+        while (unscaled.signum() > 0) {
+            BigInteger[] qr = unscaled.divideAndRemainder(NBASE);
+            groups[count++] = qr[1].shortValue();
+            unscaled = qr[0];
+        }
+        //去掉末尾为0的组
+        int low = 0;
+        while (low < count && groups[low] == 0) {
+            low++;
+        }
+        int ndigits = count - low;
+        int weight = ndigits == 0 ? 0 : count - 1 - fracGroups;
+
+        out.writeInt(8 + ndigits * 2);
+        out.writeShort(ndigits);
+        out.writeShort(weight);
+        out.writeShort(sign);
+        out.writeShort(dscale);
+        for (int i = count - 1; i >= low; i--) {
+            out.writeShort(groups[i]);
+        }
+    }
+
+    private static void writeNaN(DataOutput out) throws IOException {
+        out.writeInt(8);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(NUMERIC_NAN);
+        out.writeShort(0);
+    }
+
+    private static boolean isNaN(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            return Double.isNaN(d) || Double.isInfinite(d);
+        }
+        return false;
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return BigDecimal.valueOf(((Number) value).doubleValue());
+        }
+        if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        }
+        if (value instanceof Number) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        }
+        String str = value.toString().trim();
+        return StringUtils.isEmpty(str) ? null : new BigDecimal(str);
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        if (value instanceof Date) {
+            return ((Date) value).toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        }
+        if (value instanceof LocalDate) {
+            return (LocalDate) value;
+        }
+        String str = value.toString().trim();
+        return StringUtils.isEmpty(str) ? null : LocalDate.parse(str);
+    }
+}
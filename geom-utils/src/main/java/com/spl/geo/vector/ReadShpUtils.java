@@ -1,16 +1,37 @@
 package com.spl.geo.vector;
 
 import com.spl.geo.exception.ShpException;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
-import org.geotools.data.FileDataStore;
-import org.geotools.data.FileDataStoreFinder;
+import org.geotools.data.Query;
+import org.geotools.data.shapefile.ShapefileDataStore;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.filter.text.cql2.CQLException;
+import org.geotools.filter.text.ecql.ECQL;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.locationtech.jts.geom.Envelope;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 读取shp工具类
@@ -24,17 +45,35 @@ public class ReadShpUtils {
     private ReadShpUtils() {
     }
 
+    private static final Logger log = LoggerFactory.getLogger(ReadShpUtils.class);
+
+    private static final FilterFactory2 FILTER_FACTORY_2 = CommonFactoryFinder.getFilterFactory2();
+
+    private static final String QIX_SUFFIX = ".qix";
+
+    private static final String SHX_SUFFIX = ".shx";
+
+    /**
+     * 正在创建空间索引的qix路径，避免同一文件被多个线程同时创建
+     */
+    private static final Map<String, Object> INDEX_LOCKS = new ConcurrentHashMap<>();
+
     /**
-     * 通过shp路径获取矢量要素集合
+     * 并行读取时每个范围的最小记录数
+     */
+    private static final long MIN_SPLIT_SIZE = 10000;
+
+    /**
+     * 通过shp路径获取矢量要素集合，数据源从进程内缓存获取，同一文件重复读取不再打开文件和解析文件头。
+     * 遍历期间持有数据源，迭代器关闭后释放
      *
      * @param shpPath shp路径，可以以shp结尾，也可以文件夹
      * @return 要素集合
      */
     public static SimpleFeatureCollection getFeatureCollectionFromShp(String shpPath) {
         File shpFile = ShpFileUtils.getShpFile(shpPath);
-        try {
-            FileDataStore store = FileDataStoreFinder.getDataStore(shpFile);
-            return store.getFeatureSource().getFeatures();
+        try (ShpDataStoreCache.Lease lease = ShpDataStoreCache.getInstance().acquire(shpFile)) {
+            return new ShpLeasedFeatureCollection(lease.getStore().getSchema(), shpFile, null);
         } catch (IOException e) {
             throw new ShpException(e.getMessage(), e);
         }
@@ -51,6 +90,246 @@ public class ReadShpUtils {
         return GeometryUtils.collection2List(featureCollectionFromShp);
     }
 
+    /**
+     * 按范围、条件读取shp的要素集合，通过qix空间索引只读取范围内的记录，只解码指定的属性。
+     * qix不存在时先创建索引，目录只读或创建失败时不使用索引读取
+     *
+     * @param shpPath    shp路径，可以以shp结尾，也可以文件夹
+     * @param bbox       范围，坐标系与shp一致，为空时不按范围过滤
+     * @param cql        ECQL过滤条件，例如 XZQDM LIKE '4101%'，为空时不按条件过滤
+     * @param attributes 需要读取的属性，地理要素总是读取，为空时读取全部属性
+     * @return 要素集合，遍历时才读取文件
+     */
+    public static SimpleFeatureCollection getFeatureCollectionFromShp(String shpPath, Envelope bbox, String cql, String... attributes) {
+        File shpFile = ShpFileUtils.getShpFile(shpPath);
+        try (ShpDataStoreCache.Lease lease = ShpDataStoreCache.getInstance().acquire(shpFile)) {
+            ShapefileDataStore store = lease.getStore();
+            ensureSpatialIndex(shpFile, store);
+            Query query = buildQuery(store.getSchema(), bbox, cql, attributes);
+            SimpleFeatureType schema = store.getFeatureSource().getFeatures(query).getSchema();
+            return new ShpLeasedFeatureCollection(schema, shpFile, query);
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 按范围、条件读取shp到集合
+     *
+     * @param shpPath    shp文件路径
+     * @param bbox       范围，坐标系与shp一致，为空时不按范围过滤
+     * @param cql        ECQL过滤条件，为空时不按条件过滤
+     * @param attributes 需要读取的属性，为空时读取全部属性
+     * @return 要素集合
+     */
+    public static List<SimpleFeature> getFeatureListFromShp(String shpPath, Envelope bbox, String cql, String... attributes) {
+        return GeometryUtils.collection2List(getFeatureCollectionFromShp(shpPath, bbox, cql, attributes));
+    }
+
+    /**
+     * 并行读取shp，按shx将记录拆分为多个范围，每个工作线程通过shx定位到自己的范围后顺序解码。
+     * 属性编码自动判断，无法判断时按GBK。
+     * 流使用后需关闭，用法：
+     * <pre>
+     * try (Stream&lt;SimpleFeature&gt; features = ReadShpUtils.parallelStream(shpPath)) {
+     *     double area = features.mapToDouble(f -&gt; ((Geometry) f.getDefaultGeometry()).getArea()).sum();
+     * }
+     * </pre>
+     *
+     * @param shpPath shp路径，可以以shp结尾，也可以文件夹
+     * @return 并行的要素流，顺序与shp中的记录一致
+     */
+    public static Stream<SimpleFeature> parallelStream(String shpPath) {
+        File shpFile = ShpFileUtils.getShpFile(shpPath);
+        String name = shpFile.getName();
+        File shxFile = new File(shpFile.getParentFile(), name.substring(0, name.length() - ShpFileUtils.SHP_SUFFIX.length()) + SHX_SUFFIX);
+        if (!shxFile.exists()) {
+            throw new ShpException("缺少shx文件，无法并行读取：" + shxFile.getAbsolutePath());
+        }
+        //shx文件头100字节，每条记录8字节
+        long recordCount = (shxFile.length() - 100) / 8;
+
+        SimpleFeatureType schema;
+        Charset charset;
+        ShapefileDataStore store = null;
+        try {
+            store = new ShapefileDataStore(shpFile.toURI().toURL());
+            //与列读取、zip读取一致，无法判断编码时按GBK
+            Charset detected = DbfUtils.detectCharset(shpFile.getAbsolutePath());
+            store.setCharset(detected != null ? detected : Charset.forName("GBK"));
+            schema = store.getSchema();
+            charset = store.getCharset();
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        } finally {
+            if (store != null) {
+                store.dispose();
+            }
+        }
+
+        Queue<ShpIndexedFeatureReader> openedReaders = new ConcurrentLinkedQueue<>();
+        ShpFeatureSpliterator spliterator = new ShpFeatureSpliterator(shpFile, charset, schema, 0, recordCount,
+                MIN_SPLIT_SIZE, openedReaders);
+        return StreamSupport.stream(spliterator, true).onClose(() -> {
+            ShpIndexedFeatureReader reader;
+            while ((reader = openedReaders.poll()) != null) {
+                reader.close();
+            }
+        });
+    }
+
+    /**
+     * 并行计算shp中每个要素的结果并归并，例如统计面积、检查有效性
+     *
+     * @param shpPath  shp路径，可以以shp结尾，也可以文件夹
+     * @param mapper   每个要素的计算函数，需线程安全
+     * @param identity 归并的初始值
+     * @param reducer  归并函数，需满足结合律
+     * @param <R>      结果类型
+     * @return 归并结果
+     */
+    public static <R> R parallelReduce(String shpPath, Function<SimpleFeature, R> mapper, R identity, BinaryOperator<R> reducer) {
+        try (Stream<SimpleFeature> features = parallelStream(shpPath)) {
+            return features.map(mapper).reduce(identity, reducer);
+        }
+    }
+
+    /**
+     * 缓存的数据源已启用空间索引，qix不存在时创建，只在按范围、条件读取时调用
+     */
+    /**
+     * qix不存在时创建，同一文件在进程内只由一个线程创建，GeoTools先写临时文件再替换，其他进程读到的qix是完整的。
+     * 目录只读或创建失败时不影响读取，按无索引的方式查询
+     */
+    private static void ensureSpatialIndex(File shpFile, ShapefileDataStore store) {
+        String name = shpFile.getName();
+        File qixFile = new File(shpFile.getParentFile(), name.substring(0, name.length() - ShpFileUtils.SHP_SUFFIX.length()) + QIX_SUFFIX);
+        if (qixFile.exists()) {
+            return;
+        }
+        File dir = qixFile.getAbsoluteFile().getParentFile();
+        if (!dir.canWrite()) {
+            log.warn("{}缺少空间索引，目录不可写，不使用索引查询", shpFile.getAbsolutePath());
+            return;
+        }
+        String lockKey = qixFile.getAbsolutePath();
+        Object lock = INDEX_LOCKS.computeIfAbsent(lockKey, key -> new Object());
+        try {
+            synchronized (lock) {
+                if (!qixFile.exists()) {
+                    log.info("{}缺少空间索引，开始创建", shpFile.getAbsolutePath());
+                    store.createSpatialIndex(false);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("{}空间索引创建失败，不使用索引查询：{}", shpFile.getAbsolutePath(), e.getMessage());
+        } finally {
+            INDEX_LOCKS.remove(lockKey, lock);
+        }
+    }
+
+    private static Query buildQuery(SimpleFeatureType schema, Envelope bbox, String cql, String... attributes) {
+        String geomName = schema.getGeometryDescriptor().getLocalName();
+        List<Filter> filters = new ArrayList<>(2);
+        if (bbox != null && !bbox.isNull()) {
+            filters.add(FILTER_FACTORY_2.bbox(FILTER_FACTORY_2.property(geomName),
+                    new ReferencedEnvelope(bbox, schema.getCoordinateReferenceSystem())));
+        }
+        if (StringUtils.isNotEmpty(cql)) {
+            try {
+                filters.add(ECQL.toFilter(cql));
+            } catch (CQLException e) {
+                throw new ShpException("过滤条件解析失败：" + cql, e);
+            }
+        }
+        Filter filter = filters.isEmpty() ? Filter.INCLUDE
+                : filters.size() == 1 ? filters.get(0) : FILTER_FACTORY_2.and(filters);
+        Query query = new Query(schema.getTypeName(), filter);
+        if (attributes != null && attributes.length > 0) {
+            List<String> propertyNames = new ArrayList<>(attributes.length + 1);
+            propertyNames.add(geomName);
+            for (String attribute : attributes) {
+                if (schema.getDescriptor(attribute) == null) {
+                    throw new ShpException("shp中不存在属性" + attribute);
+                }
+                if (!geomName.equals(attribute)) {
+                    propertyNames.add(attribute);
+                }
+            }
+            query.setPropertyNames(propertyNames);
+        }
+        log.debug("shp查询条件：{}，属性：{}", filter, attributes == null ? null : Arrays.toString(attributes));
+        return query;
+    }
+
+    /**
+     * 以惰性的流读取shp，遍历时逐个解码要素，内存中不保留整个图层，使用后需关闭
+     *
+     * @param shpPath shp路径，可以以shp结尾，也可以文件夹
+     * @return 顺序要素流
+     */
+    public static Stream<SimpleFeature> streamFromShp(String shpPath) {
+        return GeometryUtils.collection2Stream(getFeatureCollectionFromShp(shpPath));
+    }
+
+    /**
+     * 按范围、条件以惰性的流读取shp，使用后需关闭
+     *
+     * @param shpPath    shp路径，可以以shp结尾，也可以文件夹
+     * @param bbox       范围，坐标系与shp一致，为空时不按范围过滤
+     * @param cql        ECQL过滤条件，为空时不按条件过滤
+     * @param attributes 需要读取的属性，为空时读取全部属性
+     * @return 顺序要素流
+     */
+    public static Stream<SimpleFeature> streamFromShp(String shpPath, Envelope bbox, String cql, String... attributes) {
+        return GeometryUtils.collection2Stream(getFeatureCollectionFromShp(shpPath, bbox, cql, attributes));
+    }
+
+    /**
+     * 不解压直接读取zip中的shp，遍历时从压缩条目中顺序解码要素，使用后需关闭，关闭时释放zip文件。
+     * 流式遍历为顺序读取，不使用空间索引，按范围或条件读取时在流上过滤；没有cpg时抽样dbf判断编码
+     *
+     * @param zipPath zip路径，读取其中第一个shp
+     * @return 顺序要素流
+     */
+    public static Stream<SimpleFeature> streamFromZip(String zipPath) {
+        return GeometryUtils.iterator2Stream(new ShpZipFeatureReader(new File(zipPath)));
+    }
+
+    /**
+     * 不解压读取zip中第一个shp的要素类型
+     *
+     * @param zipPath zip路径
+     * @return 要素类型
+     */
+    public static SimpleFeatureType getSchemaFromZip(String zipPath) {
+        try (ShpZipFeatureReader reader = new ShpZipFeatureReader(new File(zipPath))) {
+            return reader.getSchema();
+        }
+    }
+
+    /**
+     * 打开shp的几何游标，只读取坐标，适用于渲染、计算面积等不需要属性的场景
+     *
+     * @param shpPath shp路径，可以以shp结尾，也可以文件夹
+     * @return 几何游标，使用后需关闭
+     */
+    public static ShpGeometryCursor openGeometryCursor(String shpPath) {
+        return ShpGeometryCursor.open(shpPath);
+    }
+
+    /**
+     * 打开按列读取dbf属性的读取器，只解码指定的字段，适用于只需要少数字段的统计、检查等场景
+     *
+     * @param shpPath shp或dbf路径
+     * @param charset 属性编码，为空时自动判断，无法判断时按GBK
+     * @param columns 需要读取的字段，不区分大小写，读取时按此顺序的序号取值
+     * @return 读取器，使用后需关闭
+     */
+    public static DbfColumnReader openColumnReader(String shpPath, Charset charset, String... columns) {
+        return DbfUtils.openColumnReader(shpPath, charset, columns);
+    }
+
     /**
      * 获取shpInfo信息
      *
@@ -59,14 +338,18 @@ public class ReadShpUtils {
      */
     public static Pair<SimpleFeatureCollection, SimpleFeatureType> getShpInfo(String shpPath) {
         File shpFile = ShpFileUtils.getShpFile(shpPath);
-        try {
-            FileDataStore store = FileDataStoreFinder.getDataStore(shpFile);
-            SimpleFeatureType schema = store.getSchema();
-            return Pair.of(store.getFeatureSource().getFeatures(), schema);
+        try (ShpDataStoreCache.Lease lease = ShpDataStoreCache.getInstance().acquire(shpFile)) {
+            SimpleFeatureType schema = lease.getStore().getSchema();
+            return Pair.of(new ShpLeasedFeatureCollection(schema, shpFile, null), schema);
         } catch (IOException e) {
             throw new ShpException(e.getMessage(), e);
         }
     }
 
-
+    /**
+     * 释放缓存的shp数据源，应用关闭或shp被替换后调用
+     */
+    public static void clearDataStoreCache() {
+        ShpDataStoreCache.getInstance().clear();
+    }
 }
@@ -2,24 +2,29 @@ package com.spl.geo.vector;
 
 import com.spl.geo.common.CoordinatorUtils;
 import com.spl.geo.exception.ShpException;
+import com.spl.geo.vector.enums.IngestMode;
 import org.apache.commons.lang3.StringUtils;
+import org.geotools.data.Query;
 import org.geotools.data.shapefile.ShapefileDataStore;
-import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.PropertyDescriptor;
+import org.opengis.referencing.operation.MathTransform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -34,7 +39,7 @@ public class Shp2Db {
     private Shp2Db() {
     }
 
-    private static final String GEOM_FIELD_REG = "^(the_geom|shape)$";
+    private static final Pattern GEOM_FIELD_PATTERN = Pattern.compile("^(the_geom|shape)$");
     private static final String GEOM_FINAL_FIELD = "geom";
 
     private static final Logger log = LoggerFactory.getLogger(Shp2Db.class);
@@ -45,130 +50,322 @@ public class Shp2Db {
     }
 
     public static void shp2Db(String tableName, String shpPath, JdbcTemplate jdbcTemplate,String seqName) {
+        shp2Db(tableName, shpPath, jdbcTemplate, seqName, IngestMode.INSERT);
+    }
+
+    /**
+     * shp导入数据库
+     *
+     * @param tableName    表名，不存在时自动创建
+     * @param shpPath      shp文件路径
+     * @param jdbcTemplate 数据库连接
+     * @param seqName      主键序列名称，为空时使用"表名_seq"
+     * @param ingestMode   入库方式，COPY模式需要PostgreSQL驱动
+     */
+    public static void shp2Db(String tableName, String shpPath, JdbcTemplate jdbcTemplate, String seqName, IngestMode ingestMode) {
+        Shp2DbOptions options = Shp2DbOptions.defaults();
+        options.setIngestMode(ingestMode);
+        shp2Db(tableName, shpPath, jdbcTemplate, seqName, options);
+    }
+
+    /**
+     * shp导入数据库
+     *
+     * @param tableName    表名，不存在时自动创建
+     * @param shpPath      shp文件路径，也可以是包含shp的zip文件，zip不解压直接读取
+     * @param jdbcTemplate 数据库连接
+     * @param seqName      主键序列名称，为空时使用"表名_seq"
+     * @param options      入库参数
+     * @return 导入的要素数量
+     */
+    public static long shp2Db(String tableName, String shpPath, JdbcTemplate jdbcTemplate, String seqName, Shp2DbOptions options) {
         File shpFile = new File(shpPath);
-        String encode = getCharSetByCpg(shpFile.getAbsolutePath());
-        String checkCharSet = null;
+        boolean zipped = isZip(shpPath);
         if(StringUtils.isEmpty(seqName)){
             seqName = tableName + "_seq";
         }
         //读取shp文件
         ShapefileDataStore fds = null;
+        ShpZipFeatureReader zipReader = null;
         SimpleFeatureIterator features = null;
+        Shp2DbListener listener = options.getListener();
+        boolean started = false;
+        long startNanos = System.nanoTime();
         try {
-            fds = new ShapefileDataStore(shpFile.toURI().toURL());
-            Integer crsCode = CoordinatorUtils.getSrId(fds);
-            //获取坐标系统epsg
-            String geomSql;
-            if (crsCode == null || crsCode == 4490) {
-                geomSql = ",ST_GeomFromText(?,4490)";
+            SimpleFeatureType schema;
+            Integer crsCode;
+            SimpleFeatureSource sfs = null;
+            Map<String, DbfFieldDef> dbfFieldDefMap;
+            if (zipped) {
+                //zip中的编码按cpg或抽样dbf判断，与解压后导入一致
+                zipReader = new ShpZipFeatureReader(shpFile);
+                schema = zipReader.getSchema();
+                crsCode = GeometryUtils.getSrId(schema);
+                log.debug("读取到zip中的shp数据属性：{}，编码{}", schema, zipReader.getCharset());
+                listener.onStart(tableName, shpPath, zipReader.getLayerBytes(), zipReader.getCount());
+                started = true;
+                dbfFieldDefMap = zipReader.parseDbfField();
             } else {
-                geomSql = ",st_transform(ST_GeomFromText(?," + crsCode + "),4490)";
-            }
-            log.debug("读取到shp数据属性：{}", fds);
-            if (StringUtils.isNotEmpty(encode)) {
-                fds.setCharset(Charset.forName(encode));
+                String encode = getCharSetByCpg(shpFile.getAbsolutePath());
+                fds = new ShapefileDataStore(shpFile.toURI().toURL());
+                //获取坐标系统epsg
+                crsCode = CoordinatorUtils.getSrId(fds);
+                log.debug("读取到shp数据属性：{}", fds);
+                //没有cpg文件时抽样dbf原始字节判断编码，字符串只按此编码解码一次
+                Charset charset = StringUtils.isNotEmpty(encode) ? Charset.forName(encode) : DbfUtils.detectCharset(shpPath);
+                if (charset != null) {
+                    log.debug("shp属性编码：{}", charset);
+                    fds.setCharset(charset);
+                }
+                sfs = fds.getFeatureSource();
+                schema = sfs.getSchema();
+                listener.onStart(tableName, shpPath, layerBytes(shpFile), sfs.getCount(Query.ALL));
+                started = true;
+                //获取约束
+                dbfFieldDefMap = DbfUtils.parseDbfField(shpPath);
             }
-            SimpleFeatureSource sfs = fds.getFeatureSource();
-            SimpleFeatureCollection featureCollection = sfs.getFeatures();
 
-            //获取约束
-            Map<String, DbfFieldDef> dbfFieldDefMap = DbfUtils.parseDbfField(shpPath);
+            //分区键按原始坐标计算，需在坐标转换前创建
+            Shp2DbPartitioner partitioner = options.isPartitioned() ? createPartitioner(options, schema, crsCode) : null;
             //查询并创建表
-            LinkedList<String> fieldList = checkAndCreateTable(tableName, dbfFieldDefMap, featureCollection.getSchema(), jdbcTemplate,seqName);
-
-            //构建插入数据的字段集合
-            StringBuilder placeholderSb = new StringBuilder();
-            fieldList.forEach(field -> {
-                if (field.matches(GEOM_FIELD_REG)) {
-                    placeholderSb.append(geomSql);
-                } else {
-                    placeholderSb.append(",?");
-                }
-            });
-
-            String fields = fieldList.stream().map(field->"\"" + field + "\"").collect(Collectors.joining(","));
-            fields = fields.replaceAll("(the_geom|shape)", GEOM_FINAL_FIELD);
-            //组装sql语句
-            String insertSql = "insert into \"" + tableName + "\"(" + fields + ") values(" + placeholderSb.substring(1) + ")";
-            log.debug("插入要素的sql==>{}", insertSql);
-
-            //批量插入要素的集合，1000条批量插入一次
-            List<Object[]> batchValueList = new ArrayList<>();
-            features = sfs.getFeatures().features();
-            int featureCount = 0;
-            while (features.hasNext()) {
-                SimpleFeature feature = features.next();
-                Object[] valueObjArr = new Object[fieldList.size()];
-                int index = 0;
-                for (String field : fieldList) {
-                    Object attribute = feature.getAttribute(field);
-                    //如果是地理要素字段，必须用toString()方法
-                    if (field.matches(GEOM_FIELD_REG)) {
-                        valueObjArr[index++] = attribute.toString();
-                    } else if ((attribute instanceof String) && StringUtils.isEmpty(encode)) {
-                        //防止乱码
-                        String attrStr = attribute.toString();
-                        if (StringUtils.isEmpty(checkCharSet)) {
-                            checkCharSet = checkCharSet(attrStr, checkCharSet);
-                        }
-                        if (StringUtils.isNotEmpty(checkCharSet)) {
-                            attrStr = new String(attrStr.getBytes(StandardCharsets.ISO_8859_1), checkCharSet);
-                        }
-                        valueObjArr[index++] = attrStr;
-                    } else {
-                        valueObjArr[index++] = attribute == null ? "" : attribute;
+            LinkedList<String> fieldList = checkAndCreateTable(tableName, dbfFieldDefMap, schema, jdbcTemplate,
+                    seqName, options.isBulkLoad(), partitioner != null, options.isIncremental());
+            if (partitioner != null) {
+                //分区在写入前全部创建，避免导入过程中执行DDL与写入连接互相等待锁
+                Set<String> keys;
+                if (zipped) {
+                    try (ShpZipFeatureReader keyReader = new ShpZipFeatureReader(shpFile)) {
+                        keys = partitioner.collectKeys(keyReader);
                     }
+                } else {
+                    keys = partitioner.collectKeys(sfs);
                 }
-                batchValueList.add(valueObjArr);
-                featureCount++;
-                //如果大于1000，要批量插入
-                if (batchValueList.size() == 1000) {
-                    jdbcTemplate.batchUpdate(insertSql, batchValueList);
-                    batchValueList.clear();
-                }
+                partitioner.createPartitions(jdbcTemplate, tableName, keys, options.isBulkLoad());
+            }
+            //增量导入时要素先写入临时表
+            Shp2DbMerger merger = null;
+            String writeTable = tableName;
+            if (options.isIncremental()) {
+                merger = createMerger(options, schema, tableName, fieldList, jdbcTemplate);
+                writeTable = merger.prepareStage();
+            }
+
+            //COPY模式无法在数据库中转换坐标，非4490坐标在客户端转换
+            MathTransform mathTransform = null;
+            boolean clientReproject = options.isClientReproject() || options.getIngestMode() == IngestMode.COPY;
+            if (clientReproject && crsCode != null && crsCode != 4490) {
+                mathTransform = CoordinatorUtils.getMathTransform(crsCode, 4490);
+                crsCode = 4490;
+            }
+
+            //编码计划只构建一次
+            FeatureRowEncoder encoder = new FeatureRowEncoder(schema, fieldList, mathTransform, partitioner, listener);
+            //断点续传时每批与进度一起提交，不使用提交间隔
+            long commitRows = options.isResumable() ? 0 : options.getCommitRows();
+            long commitBytes = options.isResumable() ? 0 : options.getCommitBytes();
+            Supplier<FeatureRowWriter> writerFactory;
+            if (options.getIngestMode() == IngestMode.COPY) {
+                //断点续传时每批为一次完整的COPY，由外层按批记录写入耗时
+                writerFactory = createCopyWriterFactory(writeTable, fieldList, dbfFieldDefMap, jdbcTemplate, commitRows, commitBytes,
+                        options.isResumable() ? Shp2DbListener.NOOP : listener);
+            } else {
+                writerFactory = createInsertWriterFactory(writeTable, fieldList, encoder.getGeomIndex(), crsCode, jdbcTemplate,
+                        commitRows, commitBytes);
             }
 
-            //执行剩余记录
-            if (!batchValueList.isEmpty()) {
-                jdbcTemplate.batchUpdate(insertSql, batchValueList);
+            Shp2DbCheckpoint checkpoint = null;
+            Map<Long, Long> committed = Collections.emptyMap();
+            if (options.isResumable()) {
+                //断点续传时通过shx索引定位，每批数据与进度一起提交
+                checkpoint = new Shp2DbCheckpoint(jdbcTemplate, options.getProgressTable(), tableName, shpFile.getCanonicalPath());
+                committed = checkpoint.loadCommitted();
+                features = zipped ? zipReader : new ShpIndexedFeatureReader(shpFile, fds.getCharset(), fds.getSchema());
+                writerFactory = createCheckpointWriterFactory(writerFactory, checkpoint, jdbcTemplate);
+            } else {
+                features = zipped ? zipReader : sfs.getFeatures().features();
+            }
+            zipReader = null;
+            AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer(options);
+            if (listener != Shp2DbListener.NOOP || batchSizer.isAdaptive()) {
+                Supplier<FeatureRowWriter> delegateFactory = writerFactory;
+                writerFactory = () -> new InstrumentedRowWriter(delegateFactory.get(), listener, batchSizer);
+            }
+            FeatureBatchReader batchReader = new FeatureBatchReader(features, batchSizer, committed, listener);
+
+            long featureCount;
+            if (options.isPipelined()) {
+                featureCount = new Shp2DbPipeline(options).run(batchReader, encoder, writerFactory);
+            } else {
+                featureCount = writeSequential(batchReader, encoder, writerFactory);
+            }
+            if (merger != null) {
+                merger.merge();
+            }
+            if (options.isBulkLoad()) {
+                finishBulkLoad(tableName, jdbcTemplate);
+            }
+            if (checkpoint != null) {
+                checkpoint.clear();
             }
             log.info("共导入矢量要素{}条",featureCount);
+            listener.onFinish(featureCount, System.nanoTime() - startNanos);
+            return featureCount;
         } catch (Exception e) {
+            if (started) {
+                listener.onFailure(e);
+            }
             throw new ShpException(e.getMessage(), e);
         } finally {
             if (features != null) {
                 features.close();
             }
+            if (zipReader != null) {
+                zipReader.close();
+            }
             if (fds != null) {
                 fds.dispose();
             }
         }
     }
 
+    /**
+     * 是否为zip压缩的shp
+     */
+    static boolean isZip(String path) {
+        return path.toLowerCase(Locale.ROOT).endsWith(".zip");
+    }
 
     /**
-     * 判断字符串的编码格式
-     *
-     * @param str     需要判断的字符串
-     * @param charSet 默认编码格式，如果不为空，直接返回此编码格式
-     * @return 判断的编码格式，如果返回null,则不能判断编码
+     * shp与dbf文件的字节数，zip为压缩包的字节数
      */
-    private static String checkCharSet(String str, String charSet) {
-        if (charSet != null && !"".equals(charSet)) {
-            return charSet;
+    static long layerBytes(File shpFile) {
+        if (isZip(shpFile.getName())) {
+            return shpFile.length();
         }
-        try {
-            int lenUtf8 = new String(str.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8).length();
-            int lenGbk = new String(str.getBytes(StandardCharsets.ISO_8859_1), "GBK").length();
-            //字符串不包含中文，不能判断是哪一种编码集
-            if (lenGbk == lenUtf8) {
-                return null;
+        String name = shpFile.getName();
+        File dbfFile = new File(shpFile.getParentFile(), name.substring(0, name.length() - 4) + DbfUtils.DBF_SUFFIX);
+        return shpFile.length() + dbfFile.length();
+    }
+
+    /**
+     * 构建分区器，分区字段必须存在于shp中，且shp不能包含分区键字段
+     */
+    private static Shp2DbPartitioner createPartitioner(Shp2DbOptions options, SimpleFeatureType schema, Integer crsCode) {
+        if (StringUtils.isNotEmpty(options.getPartitionField()) && schema.getDescriptor(options.getPartitionField()) == null) {
+            throw new ShpException("shp中不存在分区字段" + options.getPartitionField());
+        }
+        if (schema.getDescriptor(Shp2DbPartitioner.PARTITION_COLUMN) != null) {
+            throw new ShpException("shp中已存在字段" + Shp2DbPartitioner.PARTITION_COLUMN + "，无法创建分区表");
+        }
+        return new Shp2DbPartitioner(options, crsCode);
+    }
+
+    /**
+     * 构建增量导入的合并器，主键字段必须存在于shp中
+     */
+    private static Shp2DbMerger createMerger(Shp2DbOptions options, SimpleFeatureType schema, String tableName,
+                                             List<String> fieldList, JdbcTemplate jdbcTemplate) {
+        if (options.isResumable()) {
+            throw new ShpException("增量导入不能与断点续传同时使用");
+        }
+        String keyField = options.getIncrementalKeyField();
+        if (StringUtils.isNotEmpty(keyField) && schema.getDescriptor(keyField) == null) {
+            throw new ShpException("shp中不存在增量导入的主键字段" + keyField);
+        }
+        List<String> columns = fieldList.stream().map(field -> isGeomField(field) ? GEOM_FINAL_FIELD : field)
+                .collect(Collectors.toList());
+        return new Shp2DbMerger(jdbcTemplate, tableName, columns, keyField);
+    }
+
+    /**
+     * 单线程依次读取、编码和写入
+     */
+    private static long writeSequential(FeatureBatchReader batchReader, FeatureRowEncoder encoder, Supplier<FeatureRowWriter> writerFactory) {
+        long featureCount = 0;
+        try (FeatureRowWriter rowWriter = writerFactory.get()) {
+            FeatureBatch<SimpleFeature> batch;
+            while ((batch = batchReader.next()) != null) {
+                rowWriter.write(encoder.encode(batch));
+                featureCount += batch.size();
+            }
+            rowWriter.finish();
+        }
+        return featureCount;
+    }
+
+    /**
+     * 构建断点续传的写入器，每批数据在单独的事务中写入并记录进度
+     */
+    private static Supplier<FeatureRowWriter> createCheckpointWriterFactory(Supplier<FeatureRowWriter> writerFactory,
+                                                                            Shp2DbCheckpoint checkpoint, JdbcTemplate jdbcTemplate) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        return () -> new CheckpointRowWriter(writerFactory, transactionTemplate, checkpoint);
+    }
+
+    /**
+     * 构建insert方式的写入器
+     */
+    private static Supplier<FeatureRowWriter> createInsertWriterFactory(String tableName, List<String> fieldList, int geomIndex,
+                                                                        Integer crsCode, JdbcTemplate jdbcTemplate,
+                                                                        long commitRows, long commitBytes) {
+        String geomSql;
+        if (crsCode == null || crsCode == 4490) {
+            geomSql = ",ST_GeomFromText(?,4490)";
+        } else {
+            geomSql = ",st_transform(ST_GeomFromText(?," + crsCode + "),4490)";
+        }
+        //构建插入数据的字段集合
+        StringBuilder placeholderSb = new StringBuilder();
+        fieldList.forEach(field -> {
+            if (isGeomField(field)) {
+                placeholderSb.append(geomSql);
+            } else {
+                placeholderSb.append(",?");
+            }
+        });
+
+        //组装sql语句
+        String insertSql = "insert into \"" + tableName + "\"(" + joinFields(fieldList) + ") values(" + placeholderSb.substring(1) + ")";
+        log.debug("插入要素的sql==>{}", insertSql);
+        return () -> new BatchInsertRowWriter(jdbcTemplate, insertSql, geomIndex, new CommitInterval(commitRows, commitBytes));
+    }
+
+    /**
+     * 构建copy方式的写入器，要素在编码时已转换为4490坐标
+     */
+    private static Supplier<FeatureRowWriter> createCopyWriterFactory(String tableName, List<String> fieldList, Map<String, DbfFieldDef> dbfFieldDefMap,
+                                                                      JdbcTemplate jdbcTemplate, long commitRows, long commitBytes,
+                                                                      Shp2DbListener listener) {
+        PgBinaryCopyWriter.ColumnType[] columnTypes = new PgBinaryCopyWriter.ColumnType[fieldList.size()];
+        int index = 0;
+        for (String field : fieldList) {
+            DbfFieldDef dbfFieldDef = dbfFieldDefMap.get(field);
+            if (isGeomField(field)) {
+                columnTypes[index++] = PgBinaryCopyWriter.ColumnType.GEOMETRY;
+            } else {
+                //分区键等非dbf字段按文本写入
+                columnTypes[index++] = dbfFieldDef == null ? PgBinaryCopyWriter.ColumnType.TEXT : PgBinaryCopyWriter.ColumnType.of(dbfFieldDef);
             }
-            return lenUtf8 > lenGbk ? "GBK" : "UTF-8";
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-            return "UTF-8";
         }
+        String copySql = "copy \"" + tableName + "\"(" + joinFields(fieldList) + ") from stdin (format binary)";
+        log.debug("copy要素的sql==>{}", copySql);
+        return () -> new PgBinaryCopyWriter(jdbcTemplate.getDataSource(), copySql, columnTypes, 4490,
+                new CommitInterval(commitRows, commitBytes), listener);
+    }
+
+    private static String joinFields(List<String> fieldList) {
+        return fieldList.stream().map(field -> "\"" + (isGeomField(field) ? GEOM_FINAL_FIELD : field) + "\"")
+                .collect(Collectors.joining(","));
+    }
+
+    /**
+     * 是否为地理要素字段
+     *
+     * @param fieldName 字段名称
+     * @return the_geom或shape字段返回true
+     */
+    static boolean isGeomField(String fieldName) {
+        return GEOM_FIELD_PATTERN.matcher(fieldName).matches();
     }
 
 
@@ -178,10 +375,14 @@ public class Shp2Db {
      * @param tableName    创建的表名
      * @param schema       需shp约束
      * @param jdbcTemplate 需要插入数据的数据连接
+     * @param bulkLoad     是否批量加载，新建的表为UNLOGGED且不带主键
+     * @param partitioned  是否创建按分区键LIST分区的表，分区表本身不能为UNLOGGED，由各分区为UNLOGGED
+     * @param incremental  是否增量导入，增加内容哈希字段
      * @return 返回字段的名称
      */
     private static LinkedList<String> checkAndCreateTable(String tableName, Map<String, DbfFieldDef> dbfFieldDefMap,
-                                                          SimpleFeatureType schema, JdbcTemplate jdbcTemplate,String seqName) {
+                                                          SimpleFeatureType schema, JdbcTemplate jdbcTemplate,String seqName,
+                                                          boolean bulkLoad, boolean partitioned, boolean incremental) {
 
         LinkedList<String> fieldList = new LinkedList<>();
 
@@ -194,13 +395,24 @@ public class Shp2Db {
             String fieldName = descriptor.getName().toString();
             fieldList.add(fieldName);
 
-            if (fieldName.matches(GEOM_FIELD_REG)) {
+            if (isGeomField(fieldName)) {
                 appendField(createTableSqlSb, GEOM_FINAL_FIELD, "\"public\".\"geometry\"");
             } else {
                 DbfFieldDef dbfFieldDef = dbfFieldDefMap.get(fieldName);
                 appendField(createTableSqlSb, fieldName, dbfFieldDef.pgFieldDef());
             }
         }
+        if (partitioned) {
+            fieldList.add(Shp2DbPartitioner.PARTITION_COLUMN);
+            appendField(createTableSqlSb, Shp2DbPartitioner.PARTITION_COLUMN, "text not null");
+        }
+        if (incremental) {
+            if (schema.getDescriptor(Shp2DbMerger.HASH_COLUMN) != null) {
+                throw new ShpException("shp中已存在字段" + Shp2DbMerger.HASH_COLUMN + "，无法增量导入");
+            }
+            fieldList.add(Shp2DbMerger.HASH_COLUMN);
+            appendField(createTableSqlSb, Shp2DbMerger.HASH_COLUMN, "text");
+        }
 
         //查询数据库名称是否存在
         //查询序列是否存在
@@ -217,16 +429,78 @@ public class Shp2Db {
         //查询或创建表
         int tableCount = jdbcTemplate.queryForObject(existTableSql, Integer.class, tableName);
         if (tableCount == 0) {
-            String createTableSql = String.format("CREATE TABLE IF NOT EXISTS \"" + tableName + "\"(" +
-                            "f_id int8 not null primary key DEFAULT nextval('%s'::regclass),%s);",
-                    seqName, createTableSqlSb.substring(1));
+            //批量加载时主键在导入完成后创建
+            String createTableSql;
+            if (partitioned) {
+                //分区表的主键必须包含分区键
+                createTableSql = String.format("CREATE TABLE IF NOT EXISTS \"" + tableName + "\"(" +
+                                "f_id int8 not null DEFAULT nextval('%s'::regclass),%s%s) partition by list (\"%s\");",
+                        seqName, createTableSqlSb.substring(1),
+                        bulkLoad ? "" : ",primary key (f_id,\"" + Shp2DbPartitioner.PARTITION_COLUMN + "\")",
+                        Shp2DbPartitioner.PARTITION_COLUMN);
+            } else {
+                createTableSql = String.format("CREATE %sTABLE IF NOT EXISTS \"" + tableName + "\"(" +
+                                "f_id int8 not null%s DEFAULT nextval('%s'::regclass),%s);",
+                        bulkLoad ? "UNLOGGED " : "", bulkLoad ? "" : " primary key", seqName, createTableSqlSb.substring(1));
+            }
             log.debug("执行创建表的sql==>{}", createTableSql);
             //执行sql
             jdbcTemplate.update(createTableSql);
+        } else if (partitioned) {
+            String partitionedSql = "select count(*) from pg_class where relname = ? and relkind = 'p'";
+            Integer partitionedCount = jdbcTemplate.queryForObject(partitionedSql, Integer.class, tableName);
+            if (partitionedCount == null || partitionedCount == 0) {
+                throw new ShpException("表" + tableName + "已存在且不是分区表，无法按分区导入");
+            }
         }
         return fieldList;
     }
 
+    /**
+     * 批量加载完成后创建主键和空间索引，将表转为LOGGED并更新统计信息。
+     * 只处理批量加载创建的UNLOGGED表，已存在的普通表不做处理；
+     * 分区表在主表上创建主键和索引(自动在各分区上创建)，并将UNLOGGED分区逐个转为LOGGED
+     *
+     * @param tableName    表名
+     * @param jdbcTemplate 数据库连接
+     */
+    private static void finishBulkLoad(String tableName, JdbcTemplate jdbcTemplate) {
+        String relationSql = "select relkind, relpersistence from pg_class where relname = ? and relkind in ('r','p')";
+        List<Map<String, Object>> relations = jdbcTemplate.queryForList(relationSql, tableName);
+        if (relations.isEmpty()) {
+            return;
+        }
+        String quotedTable = "\"" + tableName + "\"";
+        boolean partitioned = "p".equals(String.valueOf(relations.get(0).get("relkind")));
+        List<String> unloggedTables;
+        if (partitioned) {
+            String unloggedSql = "select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid " +
+                    "where i.inhparent = ?::regclass and c.relpersistence = 'u'";
+            unloggedTables = jdbcTemplate.queryForList(unloggedSql, String.class, quotedTable);
+        } else if ("u".equals(String.valueOf(relations.get(0).get("relpersistence")))) {
+            unloggedTables = Collections.singletonList(tableName);
+        } else {
+            unloggedTables = Collections.emptyList();
+        }
+        if (unloggedTables.isEmpty()) {
+            log.debug("表{}不是批量加载创建的UNLOGGED表，跳过建索引", tableName);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        String pkCountSql = "select count(*) from pg_constraint where conrelid = ?::regclass and contype = 'p'";
+        Integer pkCount = jdbcTemplate.queryForObject(pkCountSql, Integer.class, quotedTable);
+        if (pkCount == null || pkCount == 0) {
+            String pkColumns = partitioned ? "f_id,\"" + Shp2DbPartitioner.PARTITION_COLUMN + "\"" : "f_id";
+            jdbcTemplate.execute("alter table " + quotedTable + " add primary key (" + pkColumns + ")");
+        }
+        jdbcTemplate.execute("create index if not exists \"" + tableName + "_geom_idx\" on " + quotedTable + " using gist (" + GEOM_FINAL_FIELD + ")");
+        for (String unloggedTable : unloggedTables) {
+            jdbcTemplate.execute("alter table \"" + unloggedTable + "\" set logged");
+        }
+        jdbcTemplate.execute("analyze " + quotedTable);
+        log.debug("表{}创建主键、空间索引并转为LOGGED，耗时{}ms", tableName, System.currentTimeMillis() - start);
+    }
+
     private static void appendField(StringBuilder createTableSqlSb, String fieldName, String type) {
         createTableSqlSb.append(",\"").append(fieldName).append("\" ").append(type);
     }
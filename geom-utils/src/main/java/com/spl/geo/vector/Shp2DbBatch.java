@@ -0,0 +1,128 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.entity.LayerIngestReport;
+import com.spl.geo.exception.ShpException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 多个shp图层批量入库，按文件大小从大到小调度到有限的线程中执行，并限制占用的数据库连接总数
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/15
+ */
+public class Shp2DbBatch {
+
+    private static final Logger log = LoggerFactory.getLogger(Shp2DbBatch.class);
+
+    private Shp2DbBatch() {
+    }
+
+    /**
+     * 文件夹下的shp批量入库，表名为shp文件名的小写
+     *
+     * @param path         shp文件夹，包括子文件夹
+     * @param jdbcTemplate 数据库连接
+     * @param options      入库参数
+     * @return 每个图层的入库结果
+     */
+    public static List<LayerIngestReport> shpDir2Db(String path, JdbcTemplate jdbcTemplate, Shp2DbOptions options) {
+        List<String> shpPathList = ShpFileUtils.listShpFiles(path).stream()
+                .map(File::getAbsolutePath).collect(Collectors.toList());
+        return shpList2Db(shpPathList, Shp2DbBatch::defaultTableName, jdbcTemplate, options);
+    }
+
+    /**
+     * shp集合批量入库
+     *
+     * @param shpPathList     shp路径集合
+     * @param tableNameMapper 根据shp文件确定表名
+     * @param jdbcTemplate    数据库连接
+     * @param options         入库参数，layerThreads为同时导入的图层数，maxConnections为连接数上限
+     * @return 每个图层的入库结果，顺序与调度顺序一致
+     */
+    public static List<LayerIngestReport> shpList2Db(List<String> shpPathList, Function<File, String> tableNameMapper,
+                                                     JdbcTemplate jdbcTemplate, Shp2DbOptions options) {
+        List<File> shpFiles = shpPathList.stream().map(ShpFileUtils::getShpFile)
+                .sorted(Comparator.comparingLong((File file) -> Shp2Db.layerBytes(file)).reversed())
+                .collect(Collectors.toList());
+        if (shpFiles.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        //每个图层占用的连接数为写入线程数
+        int connectionsPerLayer = Math.max(options.getWriterThreads(), 1);
+        int layerThreads = Math.max(options.getLayerThreads(), 1);
+        int maxConnections = options.getMaxConnections() > 0 ? options.getMaxConnections() : layerThreads * connectionsPerLayer;
+        if (connectionsPerLayer > maxConnections) {
+            throw new ShpException("写入线程数" + connectionsPerLayer + "超过了连接数上限" + maxConnections);
+        }
+        Semaphore connections = new Semaphore(maxConnections, true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(layerThreads, shpFiles.size()));
+        try {
+            List<Future<LayerIngestReport>> futures = new ArrayList<>(shpFiles.size());
+            for (File shpFile : shpFiles) {
+                String tableName = tableNameMapper.apply(shpFile);
+                futures.add(executor.submit(() -> ingestLayer(shpFile, tableName, jdbcTemplate, options, connections, connectionsPerLayer)));
+            }
+            List<LayerIngestReport> reports = new ArrayList<>(futures.size());
+            for (Future<LayerIngestReport> future : futures) {
+                reports.add(future.get());
+            }
+            long rows = reports.stream().mapToLong(LayerIngestReport::getRows).sum();
+            long failed = reports.stream().filter(report -> !report.isSuccess()).count();
+            log.info("批量导入图层{}个，失败{}个，共导入矢量要素{}条", reports.size(), failed, rows);
+            return reports;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ShpException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new ShpException(e.getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static LayerIngestReport ingestLayer(File shpFile, String tableName, JdbcTemplate jdbcTemplate, Shp2DbOptions options,
+                                                 Semaphore connections, int connectionsPerLayer) throws InterruptedException {
+        LayerIngestReport report = new LayerIngestReport();
+        report.setShpPath(shpFile.getAbsolutePath());
+        report.setTableName(tableName);
+        report.setBytes(Shp2Db.layerBytes(shpFile));
+        connections.acquire(connectionsPerLayer);
+        long start = System.currentTimeMillis();
+        try {
+            report.setRows(Shp2Db.shp2Db(tableName, shpFile.getAbsolutePath(), jdbcTemplate, null, options));
+            report.setSuccess(true);
+        } catch (Exception e) {
+            log.error("图层{}导入失败：{}", shpFile.getAbsolutePath(), e.getMessage(), e);
+            report.setErrorMessage(e.getMessage());
+        } finally {
+            connections.release(connectionsPerLayer);
+            report.setElapsedMillis(System.currentTimeMillis() - start);
+        }
+        log.debug("图层{}导入完成：{}", shpFile.getName(), report);
+        return report;
+    }
+
+    private static String defaultTableName(File shpFile) {
+        String name = shpFile.getName();
+        return name.substring(0, name.length() - 4).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,78 @@
+package com.spl.geo.vector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * shp入库进度，每提交一批要素记录一次已提交的序号区间，重新导入时跳过已提交的要素
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/10
+ */
+class Shp2DbCheckpoint {
+
+    private static final Logger log = LoggerFactory.getLogger(Shp2DbCheckpoint.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String progressTable;
+
+    private final String tableName;
+
+    private final String shpPath;
+
+    Shp2DbCheckpoint(JdbcTemplate jdbcTemplate, String progressTable, String tableName, String shpPath) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.progressTable = progressTable;
+        this.tableName = tableName;
+        this.shpPath = shpPath;
+    }
+
+    /**
+     * 创建进度表并查询已提交的区间
+     *
+     * @return 已提交的区间，key为开始序号，value为结束序号(不包含)
+     */
+    Map<Long, Long> loadCommitted() {
+        String createSql = "create table if not exists \"" + progressTable + "\"(" +
+                "table_name varchar(255) not null,shp_path varchar(1024) not null," +
+                "start_index int8 not null,end_index int8 not null,committed_at timestamp not null default now()," +
+                "primary key(table_name,shp_path,start_index))";
+        log.debug("执行创建进度表的sql==>{}", createSql);
+        jdbcTemplate.update(createSql);
+
+        Map<Long, Long> committed = new TreeMap<>();
+        String querySql = "select start_index,end_index from \"" + progressTable + "\" where table_name = ? and shp_path = ?";
+        jdbcTemplate.query(querySql, rs -> {
+            committed.put(rs.getLong(1), rs.getLong(2));
+        }, tableName, shpPath);
+        if (!committed.isEmpty()) {
+            long committedCount = committed.entrySet().stream().mapToLong(e -> e.getValue() - e.getKey()).sum();
+            log.info("表{}已导入要素{}条，跳过已提交的要素继续导入", tableName, committedCount);
+        }
+        return committed;
+    }
+
+    /**
+     * 记录已提交的区间，需要与数据写入在同一事务中执行
+     *
+     * @param batch 已写入的批次
+     */
+    void record(FeatureBatch<?> batch) {
+        String insertSql = "insert into \"" + progressTable + "\"(table_name,shp_path,start_index,end_index) values(?,?,?,?)";
+        jdbcTemplate.update(insertSql, tableName, shpPath, batch.getStartIndex(), batch.getEndIndex());
+    }
+
+    /**
+     * 导入完成后清除进度
+     */
+    void clear() {
+        String deleteSql = "delete from \"" + progressTable + "\" where table_name = ? and shp_path = ?";
+        jdbcTemplate.update(deleteSql, tableName, shpPath);
+    }
+}
@@ -0,0 +1,91 @@
+package com.spl.geo.vector;
+
+/**
+ * shp入库过程监听，通过Shp2DbOptions传入。
+ * 流水线模式下读取、编码和写入在不同线程中回调，实现类需保证线程安全，且回调中不能执行耗时操作
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/22
+ */
+public interface Shp2DbListener {
+
+    /**
+     * 不做任何处理的监听
+     */
+    Shp2DbListener NOOP = new Shp2DbListener() {
+    };
+
+    /**
+     * 开始导入一个图层
+     *
+     * @param tableName    表名
+     * @param shpPath      shp文件路径
+     * @param layerBytes   shp与dbf文件的字节数
+     * @param featureTotal 要素总数，未知时为-1
+     */
+    default void onStart(String tableName, String shpPath, long layerBytes, long featureTotal) {
+    }
+
+    /**
+     * 读取一批要素
+     *
+     * @param features 要素数量
+     * @param nanos    读取耗时(纳秒)
+     */
+    default void onRead(int features, long nanos) {
+    }
+
+    /**
+     * 编码一批要素
+     *
+     * @param features 要素数量
+     * @param nanos    编码耗时(纳秒)
+     */
+    default void onEncode(int features, long nanos) {
+    }
+
+    /**
+     * 向数据库写入一次数据。INSERT模式和断点续传时为每批数据的写入；
+     * COPY模式每批只写入缓冲区，为每次结束COPY（包括写入结束时的最后一次）与数据库的往返
+     *
+     * @param rows  行数，COPY模式为本次COPY写入的行数
+     * @param nanos 写入耗时(纳秒)
+     */
+    default void onFlush(int rows, long nanos) {
+    }
+
+    /**
+     * 写入结束，提交剩余数据，每个写入器回调一次；COPY模式的最后一次COPY通过onFlush回调，不回调此方法
+     *
+     * @param nanos 提交耗时(纳秒)
+     */
+    default void onFinishWrite(long nanos) {
+    }
+
+    /**
+     * 流水线队列中等待处理的批次数，只在流水线模式下回调
+     *
+     * @param featureQueueDepth 待编码批次数
+     * @param rowQueueDepth     待写入批次数
+     */
+    default void onQueueDepth(int featureQueueDepth, int rowQueueDepth) {
+    }
+
+    /**
+     * 图层导入完成
+     *
+     * @param featureCount 导入的要素数量
+     * @param elapsedNanos 总耗时(纳秒)
+     */
+    default void onFinish(long featureCount, long elapsedNanos) {
+    }
+
+    /**
+     * 图层导入失败
+     *
+     * @param e 异常
+     */
+    default void onFailure(Throwable e) {
+    }
+}
@@ -0,0 +1,161 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 增量导入：要素先写入临时表，再与目标表按内容哈希比较，只对有变化的要素执行删除、更新和插入。
+ * 设置了主键字段时按主键匹配，哈希不同的更新；未设置时按哈希匹配，变化的要素删除后重新插入
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/27
+ */
+class Shp2DbMerger {
+
+    private static final Logger log = LoggerFactory.getLogger(Shp2DbMerger.class);
+
+    /**
+     * 内容哈希字段名称
+     */
+    static final String HASH_COLUMN = "row_hash";
+
+    private static final String STAGE_SUFFIX = "_stage";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String tableName;
+
+    private final String stageTable;
+
+    /**
+     * 写入的字段，已转换为数据库字段名并加引号
+     */
+    private final List<String> columns;
+
+    private final String keyField;
+
+    /**
+     * @param jdbcTemplate 数据库连接
+     * @param tableName    目标表
+     * @param columns      写入的字段，包括内容哈希字段
+     * @param keyField     匹配要素的主键字段，为空时按内容哈希匹配
+     */
+    Shp2DbMerger(JdbcTemplate jdbcTemplate, String tableName, List<String> columns, String keyField) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tableName = tableName;
+        this.stageTable = tableName + STAGE_SUFFIX;
+        this.columns = columns.stream().map(column -> "\"" + column + "\"").collect(Collectors.toList());
+        this.keyField = keyField;
+    }
+
+    /**
+     * 目标表增加哈希字段和索引，并重新创建临时表
+     *
+     * @return 临时表名称，要素写入此表
+     */
+    String prepareStage() {
+        String quotedTable = "\"" + tableName + "\"";
+        //已有的表没有哈希字段时增加，首次增量导入时所有要素都视为有变化
+        jdbcTemplate.execute("alter table " + quotedTable + " add column if not exists \"" + HASH_COLUMN + "\" text");
+        jdbcTemplate.execute("create index if not exists \"" + tableName + "_" + HASH_COLUMN + "_idx\" on " + quotedTable +
+                " (\"" + HASH_COLUMN + "\")");
+        if (StringUtils.isNotEmpty(keyField)) {
+            jdbcTemplate.execute("create index if not exists \"" + tableName + "_" + keyField + "_idx\" on " + quotedTable +
+                    " (\"" + keyField + "\")");
+        }
+        jdbcTemplate.execute("drop table if exists \"" + stageTable + "\"");
+        String createSql = "create unlogged table \"" + stageTable + "\" as select " + String.join(",", columns) +
+                " from " + quotedTable + " with no data";
+        log.debug("执行创建临时表的sql==>{}", createSql);
+        jdbcTemplate.execute(createSql);
+        return stageTable;
+    }
+
+    /**
+     * 在一个事务中合并临时表到目标表，完成后删除临时表。
+     * 按主键匹配时主键不能为空且不能重复：入库时空属性写入空字符串，空值或重复的主键会匹配到多条要素，结果不确定，因此不合并。
+     * 按哈希匹配时内容完全相同的要素按出现次数匹配，shp中有n条相同要素时目标表中也保留n条
+     */
+    void merge() {
+        long start = System.currentTimeMillis();
+        String quotedStage = "\"" + stageTable + "\"";
+        boolean matchByKey = StringUtils.isNotEmpty(keyField);
+        String matchColumn = "\"" + (matchByKey ? keyField : HASH_COLUMN) + "\"";
+        if (matchByKey) {
+            checkKeys(quotedStage, matchColumn);
+        }
+        jdbcTemplate.execute("create index on " + quotedStage + " (" + matchColumn + ")");
+        jdbcTemplate.execute("analyze " + quotedStage);
+
+        String quotedTable = "\"" + tableName + "\"";
+        String columnSql = String.join(",", columns);
+        String stageColumnSql = columns.stream().map(column -> "s." + column).collect(Collectors.joining(","));
+        String deleteSql;
+        String insertSql;
+        if (matchByKey) {
+            deleteSql = "delete from " + quotedTable + " t where not exists (select 1 from " + quotedStage +
+                    " s where s." + matchColumn + " = t." + matchColumn + ")";
+            insertSql = "insert into " + quotedTable + "(" + columnSql + ") select " + stageColumnSql + " from " + quotedStage +
+                    " s where not exists (select 1 from " + quotedTable + " t where t." + matchColumn + " = s." + matchColumn + ")";
+        } else {
+            //相同哈希的要素按序号匹配：目标表中序号超过临时表数量的删除，临时表中序号超过目标表数量的插入。
+            //分区表中ctid只在分区内唯一，需同时按tableoid定位
+            deleteSql = "delete from " + quotedTable + " t using (select tableoid as row_table, ctid as row_ctid, " + matchColumn +
+                    ", row_number() over (partition by " + matchColumn + ") as rn from " + quotedTable + ") d" +
+                    " where t.tableoid = d.row_table and t.ctid = d.row_ctid and d.rn > (select count(*) from " + quotedStage +
+                    " s where s." + matchColumn + " = d." + matchColumn + ")";
+            insertSql = "insert into " + quotedTable + "(" + columnSql + ") select " + stageColumnSql + " from (select *, " +
+                    "row_number() over (partition by " + matchColumn + ") as rn from " + quotedStage + ") s" +
+                    " where s.rn > (select count(*) from " + quotedTable + " t where t." + matchColumn + " = s." + matchColumn + ")";
+        }
+        String updateSql = "update " + quotedTable + " t set " +
+                columns.stream().map(column -> column + " = s." + column).collect(Collectors.joining(",")) +
+                " from " + quotedStage + " s where t." + matchColumn + " = s." + matchColumn +
+                " and t.\"" + HASH_COLUMN + "\" is distinct from s.\"" + HASH_COLUMN + "\"";
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        int[] counts = new int[3];
+        transactionTemplate.executeWithoutResult(status -> {
+            counts[0] = jdbcTemplate.update(deleteSql);
+            if (matchByKey) {
+                counts[1] = jdbcTemplate.update(updateSql);
+            }
+            counts[2] = jdbcTemplate.update(insertSql);
+        });
+        jdbcTemplate.execute("drop table if exists " + quotedStage);
+        jdbcTemplate.execute("analyze " + quotedTable);
+        log.info("表{}增量导入：删除{}条，更新{}条，新增{}条，合并耗时{}ms", tableName, counts[0], counts[1], counts[2],
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 检查临时表中的主键，存在空值(入库时写为空字符串)或重复值时删除临时表并抛出异常，目标表不做修改
+     */
+    private void checkKeys(String quotedStage, String keyColumn) {
+        Long emptyKeys = jdbcTemplate.queryForObject("select count(*) from " + quotedStage + " where " + keyColumn +
+                " is null or " + keyColumn + "::text = ''", Long.class);
+        String error = null;
+        if (emptyKeys != null && emptyKeys > 0) {
+            error = "增量导入的主键字段" + keyField + "存在" + emptyKeys + "条空值，无法匹配要素";
+        } else {
+            List<String> duplicates = jdbcTemplate.queryForList("select " + keyColumn + "::text from " + quotedStage +
+                    " group by " + keyColumn + " having count(*) > 1 limit 10", String.class);
+            if (!duplicates.isEmpty()) {
+                error = "增量导入的主键字段" + keyField + "存在重复值，无法匹配要素：" + String.join(",", duplicates);
+            }
+        }
+        if (error != null) {
+            jdbcTemplate.execute("drop table if exists " + quotedStage);
+            throw new ShpException(error);
+        }
+    }
+}
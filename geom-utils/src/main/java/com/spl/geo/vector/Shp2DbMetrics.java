@@ -0,0 +1,309 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 汇总入库过程的统计信息，可注册为JMX MBean供jconsole等工具查看。
+ * 同一实例可在多个图层的导入中共用，统计值为所有图层的累计
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/22
+ */
+public class Shp2DbMetrics implements Shp2DbListener, Shp2DbMetricsMBean {
+
+    /**
+     * 写入耗时分布的桶上限(毫秒)，最后一个桶为超过最大上限的写入
+     */
+    private static final long[] LATENCY_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+    private final LongAdder featuresRead = new LongAdder();
+    private final LongAdder rowsFlushed = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder finishWriteNanos = new LongAdder();
+    private final LongAccumulator flushMaxNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BOUNDS.length + 1);
+
+    private final LongAdder layerBytes = new LongAdder();
+    private final LongAdder featureTotal = new LongAdder();
+    private final AtomicInteger runningLayers = new AtomicInteger();
+    private final LongAdder failedLayers = new LongAdder();
+
+    private volatile int featureQueueDepth;
+    private volatile int rowQueueDepth;
+    private volatile long startNanos;
+    private volatile long finishNanos;
+
+    private ObjectName objectName;
+
+    @Override
+    public void onStart(String tableName, String shpPath, long layerBytes, long featureTotal) {
+        if (runningLayers.getAndIncrement() == 0 && startNanos == 0) {
+            startNanos = System.nanoTime();
+        }
+        if (featureTotal > 0) {
+            this.layerBytes.add(layerBytes);
+            this.featureTotal.add(featureTotal);
+        }
+    }
+
+    @Override
+    public void onRead(int features, long nanos) {
+        featuresRead.add(features);
+        readNanos.add(nanos);
+    }
+
+    @Override
+    public void onEncode(int features, long nanos) {
+        encodeNanos.add(nanos);
+    }
+
+    @Override
+    public void onFlush(int rows, long nanos) {
+        rowsFlushed.add(rows);
+        flushNanos.add(nanos);
+        flushCount.increment();
+        flushMaxNanos.accumulate(nanos);
+        latencyBuckets.incrementAndGet(bucketOf(TimeUnit.NANOSECONDS.toMillis(nanos)));
+    }
+
+    @Override
+    public void onFinishWrite(long nanos) {
+        finishWriteNanos.add(nanos);
+    }
+
+    @Override
+    public void onQueueDepth(int featureQueueDepth, int rowQueueDepth) {
+        this.featureQueueDepth = featureQueueDepth;
+        this.rowQueueDepth = rowQueueDepth;
+    }
+
+    @Override
+    public void onFinish(long featureCount, long elapsedNanos) {
+        layerFinished();
+    }
+
+    @Override
+    public void onFailure(Throwable e) {
+        failedLayers.increment();
+        layerFinished();
+    }
+
+    private void layerFinished() {
+        if (runningLayers.decrementAndGet() == 0) {
+            finishNanos = System.nanoTime();
+            featureQueueDepth = 0;
+            rowQueueDepth = 0;
+        }
+    }
+
+    /**
+     * 注册为JMX MBean，ObjectName为com.spl.geo:type=Shp2Db,name=名称
+     *
+     * @param name 名称，如表名或任务名
+     * @return 注册的ObjectName
+     */
+    public synchronized ObjectName registerMBean(String name) {
+        try {
+            ObjectName newObjectName = new ObjectName("com.spl.geo:type=Shp2Db,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, newObjectName);
+            objectName = newObjectName;
+            return objectName;
+        } catch (Exception e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 注销JMX MBean，未注册时不处理
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        } catch (Exception e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public long getFeaturesRead() {
+        return featuresRead.sum();
+    }
+
+    @Override
+    public long getRowsFlushed() {
+        return rowsFlushed.sum();
+    }
+
+    @Override
+    public double getFeaturesPerSecond() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long end = runningLayers.get() > 0 || finishNanos == 0 ? System.nanoTime() : finishNanos;
+        double seconds = (end - start) / 1e9;
+        return seconds <= 0 ? 0 : getRowsFlushed() / seconds;
+    }
+
+    /**
+     * 估算值，按已读取要素占要素总数的比例折算shp与dbf的字节数，不是读取器实际读取的字节数
+     */
+    @Override
+    public long getEstimatedBytesRead() {
+        long total = featureTotal.sum();
+        if (total <= 0) {
+            return 0;
+        }
+        return (long) ((double) layerBytes.sum() * Math.min(getFeaturesRead(), total) / total);
+    }
+
+    @Override
+    public long getReadMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(readNanos.sum());
+    }
+
+    @Override
+    public long getEncodeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(encodeNanos.sum());
+    }
+
+    @Override
+    public long getFlushMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(flushNanos.sum());
+    }
+
+    /**
+     * @return 与数据库往返的写入次数，INSERT模式为批次数，COPY模式为结束COPY的次数，耗时和耗时分布按同样的口径统计
+     */
+    @Override
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
+    /**
+     * @return 写入结束时提交剩余数据的耗时，不计入写入次数和耗时分布
+     */
+    @Override
+    public long getFinishMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(finishWriteNanos.sum());
+    }
+
+    @Override
+    public double getFlushLatencyP50Millis() {
+        return flushLatencyPercentile(0.5);
+    }
+
+    @Override
+    public double getFlushLatencyP95Millis() {
+        return flushLatencyPercentile(0.95);
+    }
+
+    @Override
+    public double getFlushLatencyP99Millis() {
+        return flushLatencyPercentile(0.99);
+    }
+
+    @Override
+    public long getFlushLatencyMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(flushMaxNanos.get());
+    }
+
+    /**
+     * @return 每个耗时区间的写入次数，如"<=1ms:10,<=2ms:3,...,>30000ms:0"
+     */
+    @Override
+    public String getFlushLatencyHistogram() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LATENCY_BOUNDS.length; i++) {
+            sb.append("<=").append(LATENCY_BOUNDS[i]).append("ms:").append(latencyBuckets.get(i)).append(',');
+        }
+        sb.append('>').append(LATENCY_BOUNDS[LATENCY_BOUNDS.length - 1]).append("ms:").append(latencyBuckets.get(LATENCY_BOUNDS.length));
+        return sb.toString();
+    }
+
+    @Override
+    public int getFeatureQueueDepth() {
+        return featureQueueDepth;
+    }
+
+    @Override
+    public int getRowQueueDepth() {
+        return rowQueueDepth;
+    }
+
+    @Override
+    public int getRunningLayers() {
+        return runningLayers.get();
+    }
+
+    @Override
+    public long getFailedLayers() {
+        return failedLayers.sum();
+    }
+
+    /**
+     * 按分布估算百分位耗时，返回所在桶的上限，超过最大桶时返回最大耗时
+     */
+    private double flushLatencyPercentile(double percentile) {
+        long count = 0;
+        long[] buckets = new long[latencyBuckets.length()];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = latencyBuckets.get(i);
+            count += buckets[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BOUNDS.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return LATENCY_BOUNDS[i];
+            }
+        }
+        return getFlushLatencyMaxMillis();
+    }
+
+    private static int bucketOf(long millis) {
+        for (int i = 0; i < LATENCY_BOUNDS.length; i++) {
+            if (millis <= LATENCY_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return LATENCY_BOUNDS.length;
+    }
+
+    @Override
+    public String toString() {
+        return "Shp2DbMetrics{" +
+                "featuresRead=" + getFeaturesRead() +
+                ", rowsFlushed=" + getRowsFlushed() +
+                ", featuresPerSecond=" + String.format("%.1f", getFeaturesPerSecond()) +
+                ", estimatedBytesRead=" + getEstimatedBytesRead() +
+                ", readMillis=" + getReadMillis() +
+                ", encodeMillis=" + getEncodeMillis() +
+                ", flushMillis=" + getFlushMillis() +
+                ", flushCount=" + getFlushCount() +
+                ", finishMillis=" + getFinishMillis() +
+                ", flushLatencyP95Millis=" + getFlushLatencyP95Millis() +
+                ", flushLatencyMaxMillis=" + getFlushLatencyMaxMillis() +
+                '}';
+    }
+}
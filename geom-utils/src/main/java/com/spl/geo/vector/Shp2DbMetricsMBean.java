@@ -0,0 +1,47 @@
+package com.spl.geo.vector;
+
+/**
+ * shp入库统计的JMX接口
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/22
+ */
+public interface Shp2DbMetricsMBean {
+
+    long getFeaturesRead();
+
+    long getRowsFlushed();
+
+    double getFeaturesPerSecond();
+
+    long getEstimatedBytesRead();
+
+    long getReadMillis();
+
+    long getEncodeMillis();
+
+    long getFlushMillis();
+
+    long getFlushCount();
+
+    long getFinishMillis();
+
+    double getFlushLatencyP50Millis();
+
+    double getFlushLatencyP95Millis();
+
+    double getFlushLatencyP99Millis();
+
+    long getFlushLatencyMaxMillis();
+
+    String getFlushLatencyHistogram();
+
+    int getFeatureQueueDepth();
+
+    int getRowQueueDepth();
+
+    int getRunningLayers();
+
+    long getFailedLayers();
+}
@@ -0,0 +1,340 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.vector.enums.IngestMode;
+
+/**
+ * shp入库参数
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/8
+ */
+public class Shp2DbOptions {
+
+    /**
+     * 入库方式
+     */
+    private IngestMode ingestMode = IngestMode.INSERT;
+
+    /**
+     * 每批写入的要素数量，设置目标字节数或目标写入耗时后为初始批次大小
+     */
+    private int batchSize = 1000;
+
+    /**
+     * 每批的目标字节数(按坐标数和字符数估算)，大于0时根据写入情况自动调整批次大小
+     */
+    private long targetBatchBytes = 0;
+
+    /**
+     * 每批的目标写入耗时(毫秒)，大于0时根据写入情况自动调整批次大小，与目标字节数同时设置时取较小的批次。
+     * COPY模式每批只写入缓冲区，写入耗时不反映数据库耗时，此参数不生效
+     */
+    private long targetFlushMillis = 0;
+
+    /**
+     * 自动调整时的最小批次大小
+     */
+    private int minBatchSize = 100;
+
+    /**
+     * 自动调整时的最大批次大小
+     */
+    private int maxBatchSize = 50000;
+
+    /**
+     * 每写入多少行提交一次，小于等于0时不按行数提交。
+     * 未设置提交间隔时insert模式每批自动提交，COPY模式每个写入线程只在结束时提交；断点续传时始终每批提交
+     */
+    private long commitRows = 0;
+
+    /**
+     * 每写入多少字节(估算)提交一次，小于等于0时不按字节数提交
+     */
+    private long commitBytes = 0;
+
+    /**
+     * 编码线程数，编码线程与写入线程都为1时不启用流水线
+     */
+    private int encoderThreads = 1;
+
+    /**
+     * 写入线程数，每个写入线程占用一个数据库连接，不能超过连接池大小
+     */
+    private int writerThreads = 1;
+
+    /**
+     * 流水线各阶段之间队列可缓存的批次数，队列满时上游阻塞
+     */
+    private int queueCapacity = 8;
+
+    /**
+     * 是否可断点续传，开启后每批数据与进度在同一事务中提交，重新导入时跳过已提交的要素
+     */
+    private boolean resumable = false;
+
+    /**
+     * 记录入库进度的表名
+     */
+    private String progressTable = "shp2db_progress";
+
+    /**
+     * 非4490坐标的要素是否在客户端转换坐标，不开启时insert模式由数据库st_transform转换。
+     * 转换在编码线程中执行，可通过encoderThreads分摊到多个线程，COPY模式始终在客户端转换
+     */
+    private boolean clientReproject = false;
+
+    /**
+     * 是否批量加载：新建的表为UNLOGGED且不带主键，导入完成后再创建主键和geom空间索引，
+     * 然后转为LOGGED并执行ANALYZE。UNLOGGED表在数据库异常重启后会被清空，断点续传只能恢复客户端的中断
+     */
+    private boolean bulkLoad = false;
+
+    /**
+     * 批量导入多个图层时同时导入的图层数
+     */
+    private int layerThreads = 1;
+
+    /**
+     * 批量导入多个图层时最多占用的数据库连接数，小于等于0时不限制
+     */
+    private int maxConnections = 0;
+
+    /**
+     * 分区字段，如行政区代码，按字段值(或前partitionKeyLength位)创建LIST分区表；为空时不按字段分区
+     */
+    private String partitionField;
+
+    /**
+     * 分区字段取值的前几位作为分区键，如行政区代码取前4位按地级市分区，小于等于0时取完整值
+     */
+    private int partitionKeyLength = 0;
+
+    /**
+     * 按4490经纬度格网分区时的格网大小(度)，要素范围中心点所在格网为分区键；小于等于0时不按格网分区。
+     * 同时设置分区字段时按字段分区
+     */
+    private double partitionGridSize = 0;
+
+    /**
+     * 是否增量导入：要素先写入临时表并计算内容哈希，再与目标表比较，只删除、更新、插入有变化的要素。
+     * 不能与断点续传同时使用
+     */
+    private boolean incremental = false;
+
+    /**
+     * 增量导入时匹配要素的主键字段，如宗地代码，字段值不能为空或重复；为空时按内容哈希匹配，有变化的要素删除后重新插入，相同的要素按出现次数匹配
+     */
+    private String incrementalKeyField;
+
+    /**
+     * 入库监听，统计读取、编码、写入耗时和队列深度，可使用Shp2DbMetrics并注册为JMX MBean
+     */
+    private Shp2DbListener listener = Shp2DbListener.NOOP;
+
+    public static Shp2DbOptions defaults() {
+        return new Shp2DbOptions();
+    }
+
+    /**
+     * 是否启用多线程流水线
+     *
+     * @return 编码线程或写入线程大于1时启用
+     */
+    public boolean isPipelined() {
+        return encoderThreads > 1 || writerThreads > 1;
+    }
+
+    /**
+     * 是否创建分区表
+     *
+     * @return 设置了分区字段或格网大小时返回true
+     */
+    public boolean isPartitioned() {
+        return (partitionField != null && !partitionField.isEmpty()) || partitionGridSize > 0;
+    }
+
+    public IngestMode getIngestMode() {
+        return ingestMode;
+    }
+
+    public void setIngestMode(IngestMode ingestMode) {
+        this.ingestMode = ingestMode;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getEncoderThreads() {
+        return encoderThreads;
+    }
+
+    public void setEncoderThreads(int encoderThreads) {
+        this.encoderThreads = encoderThreads;
+    }
+
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    public String getProgressTable() {
+        return progressTable;
+    }
+
+    public void setProgressTable(String progressTable) {
+        this.progressTable = progressTable;
+    }
+
+    public boolean isBulkLoad() {
+        return bulkLoad;
+    }
+
+    public void setBulkLoad(boolean bulkLoad) {
+        this.bulkLoad = bulkLoad;
+    }
+
+    public int getLayerThreads() {
+        return layerThreads;
+    }
+
+    public void setLayerThreads(int layerThreads) {
+        this.layerThreads = layerThreads;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public boolean isClientReproject() {
+        return clientReproject;
+    }
+
+    public void setClientReproject(boolean clientReproject) {
+        this.clientReproject = clientReproject;
+    }
+
+    public String getPartitionField() {
+        return partitionField;
+    }
+
+    public void setPartitionField(String partitionField) {
+        this.partitionField = partitionField;
+    }
+
+    public int getPartitionKeyLength() {
+        return partitionKeyLength;
+    }
+
+    public void setPartitionKeyLength(int partitionKeyLength) {
+        this.partitionKeyLength = partitionKeyLength;
+    }
+
+    public double getPartitionGridSize() {
+        return partitionGridSize;
+    }
+
+    public void setPartitionGridSize(double partitionGridSize) {
+        this.partitionGridSize = partitionGridSize;
+    }
+
+    public Shp2DbListener getListener() {
+        return listener;
+    }
+
+    public void setListener(Shp2DbListener listener) {
+        this.listener = listener == null ? Shp2DbListener.NOOP : listener;
+    }
+
+    public long getTargetBatchBytes() {
+        return targetBatchBytes;
+    }
+
+    public void setTargetBatchBytes(long targetBatchBytes) {
+        this.targetBatchBytes = targetBatchBytes;
+    }
+
+    public long getTargetFlushMillis() {
+        return targetFlushMillis;
+    }
+
+    public void setTargetFlushMillis(long targetFlushMillis) {
+        this.targetFlushMillis = targetFlushMillis;
+    }
+
+    public int getMinBatchSize() {
+        return minBatchSize;
+    }
+
+    public void setMinBatchSize(int minBatchSize) {
+        this.minBatchSize = minBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getCommitRows() {
+        return commitRows;
+    }
+
+    public void setCommitRows(long commitRows) {
+        this.commitRows = commitRows;
+    }
+
+    public long getCommitBytes() {
+        return commitBytes;
+    }
+
+    public void setCommitBytes(long commitBytes) {
+        this.commitBytes = commitBytes;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public String getIncrementalKeyField() {
+        return incrementalKeyField;
+    }
+
+    public void setIncrementalKeyField(String incrementalKeyField) {
+        this.incrementalKeyField = incrementalKeyField;
+    }
+}
@@ -0,0 +1,235 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.common.CoordinatorUtils;
+import com.spl.geo.exception.ShpException;
+import org.apache.commons.lang3.StringUtils;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+import org.opengis.referencing.operation.MathTransform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 分区表的分区键计算与分区创建。
+ * 分区键为属性字段(如行政区代码)的值或前缀，或者要素范围中心点所在的4490经纬度格网编号。
+ * 导入前根据属性值或要素中心点创建所有分区，导入时插入主表由数据库路由到对应分区
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/20
+ */
+class Shp2DbPartitioner {
+
+    private static final Logger log = LoggerFactory.getLogger(Shp2DbPartitioner.class);
+
+    /**
+     * 分区键字段名称
+     */
+    static final String PARTITION_COLUMN = "part_key";
+
+    /**
+     * 按格网分区时一个图层最多的分区数
+     */
+    private static final int MAX_GRID_PARTITIONS = 10000;
+
+    /**
+     * PostgreSQL标识符的最大字节数
+     */
+    private static final int MAX_IDENTIFIER_BYTES = 63;
+
+    private static final String DEFAULT_PARTITION = "default";
+
+    private final String partitionField;
+
+    private final int partitionKeyLength;
+
+    private final double gridSize;
+
+    /**
+     * 原始坐标到4490的转换，计算格网编号使用，原始坐标为4490时为null
+     */
+    private final MathTransform gridTransform;
+
+    Shp2DbPartitioner(Shp2DbOptions options, Integer crsCode) {
+        this.partitionField = options.getPartitionField();
+        this.partitionKeyLength = options.getPartitionKeyLength();
+        this.gridSize = options.getPartitionGridSize();
+        this.gridTransform = crsCode == null || crsCode == 4490 ? null : CoordinatorUtils.getMathTransform(crsCode, 4490);
+    }
+
+    /**
+     * 计算要素的分区键
+     *
+     * @param feature 要素
+     * @return 分区键，无法计算时返回空字符串，写入默认分区
+     */
+    String keyOf(SimpleFeature feature) {
+        if (StringUtils.isNotEmpty(partitionField)) {
+            return fieldKey(feature.getAttribute(partitionField));
+        }
+        return gridKeyOf((Geometry) feature.getDefaultGeometry());
+    }
+
+    /**
+     * 地理要素范围中心点转换到4490后所在的格网编号
+     */
+    private String gridKeyOf(Geometry geometry) {
+        if (geometry == null || geometry.isEmpty()) {
+            return "";
+        }
+        Envelope envelope = geometry.getEnvelopeInternal();
+        double[] center = {(envelope.getMinX() + envelope.getMaxX()) / 2, (envelope.getMinY() + envelope.getMaxY()) / 2};
+        if (gridTransform != null) {
+            try {
+                gridTransform.transform(center, 0, center, 0, 1);
+            } catch (Exception e) {
+                throw new ShpException(e.getMessage(), e);
+            }
+        }
+        return gridKey(gridColumn(center[0]), gridRow(center[1]));
+    }
+
+    /**
+     * 导入前计算图层所有的分区键
+     *
+     * @param sfs 要素源
+     * @return 分区键集合
+     */
+    Set<String> collectKeys(SimpleFeatureSource sfs) {
+        //只读取分区字段或地理要素，不解析其他属性
+        String propertyName = StringUtils.isNotEmpty(partitionField) ? partitionField
+                : sfs.getSchema().getGeometryDescriptor().getLocalName();
+        Query query = new Query(sfs.getSchema().getTypeName(), Filter.INCLUDE, new String[]{propertyName});
+        try (SimpleFeatureIterator iterator = sfs.getFeatures(query).features()) {
+            return collectKeys(iterator);
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 遍历要素计算分区键，用于zip等没有要素源的输入，迭代器由调用方关闭
+     *
+     * @param iterator 要素迭代器
+     * @return 分区键集合
+     */
+    Set<String> collectKeys(SimpleFeatureIterator iterator) {
+        Set<String> keys = new TreeSet<>();
+        if (StringUtils.isNotEmpty(partitionField)) {
+            while (iterator.hasNext()) {
+                keys.add(fieldKey(iterator.next().getAttribute(partitionField)));
+            }
+        } else {
+            //与导入时相同按每个要素的中心点计算，图层范围转换后不一定包含所有要素转换后的中心点
+            while (iterator.hasNext()) {
+                keys.add(gridKeyOf((Geometry) iterator.next().getDefaultGeometry()));
+                if (keys.size() > MAX_GRID_PARTITIONS) {
+                    throw new ShpException("格网分区数超过上限" + MAX_GRID_PARTITIONS + "，请增大格网大小");
+                }
+            }
+        }
+        keys.remove("");
+        return keys;
+    }
+
+    /**
+     * 创建分区，已存在的分区不重复创建，同时创建默认分区存放无法计算分区键的要素
+     *
+     * @param jdbcTemplate 数据库连接
+     * @param tableName    主表名称
+     * @param keys         分区键集合
+     * @param unlogged     分区是否为UNLOGGED
+     */
+    void createPartitions(JdbcTemplate jdbcTemplate, String tableName, Set<String> keys, boolean unlogged) {
+        String unloggedSql = unlogged ? "UNLOGGED " : "";
+        String defaultName = truncate(tableName + "_" + DEFAULT_PARTITION, MAX_IDENTIFIER_BYTES);
+        String defaultSql = "CREATE " + unloggedSql + "TABLE IF NOT EXISTS \"" + defaultName +
+                "\" partition of \"" + tableName + "\" default";
+        jdbcTemplate.execute(defaultSql);
+        //分区已存在时不重复创建，名称重复会使后一个分区被跳过
+        Set<String> names = new HashSet<>();
+        names.add(defaultName);
+        for (String key : keys) {
+            String partitionName = partitionName(tableName, key);
+            if (!names.add(partitionName)) {
+                throw new ShpException("分区键" + key + "的分区名称" + partitionName + "重复");
+            }
+            String partitionSql = "CREATE " + unloggedSql + "TABLE IF NOT EXISTS \"" + partitionName +
+                    "\" partition of \"" + tableName + "\" for values in ('" + key.replace("'", "''") + "')";
+            log.debug("执行创建分区的sql==>{}", partitionSql);
+            jdbcTemplate.execute(partitionSql);
+        }
+        log.debug("表{}共有分区{}个", tableName, keys.size() + 1);
+    }
+
+    private String fieldKey(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String key = value.toString().trim();
+        if (partitionKeyLength > 0 && key.length() > partitionKeyLength) {
+            key = key.substring(0, partitionKeyLength);
+        }
+        return key;
+    }
+
+    private int gridColumn(double x) {
+        return (int) Math.floor((x + 180) / gridSize);
+    }
+
+    private int gridRow(double y) {
+        return (int) Math.floor((y + 90) / gridSize);
+    }
+
+    private static String gridKey(int col, int row) {
+        return "c" + col + "_r" + row;
+    }
+
+    /**
+     * 分区表名称，非字母数字的字符替换为下划线，长度不超过PostgreSQL的63字节限制。
+     * 分区键被替换、截断或与默认分区同名时，末尾加原始分区键的哈希区分
+     */
+    private static String partitionName(String tableName, String key) {
+        String safeKey = key.replaceAll("[^A-Za-z0-9_]", "_");
+        String name = tableName + "_" + safeKey;
+        if (safeKey.equals(key) && !DEFAULT_PARTITION.equals(key) && utf8Length(name) <= MAX_IDENTIFIER_BYTES) {
+            return name;
+        }
+        String hash = String.format("_%08x", key.hashCode());
+        return truncate(name, MAX_IDENTIFIER_BYTES - hash.length()) + hash;
+    }
+
+    /**
+     * 按UTF-8字节数在字符边界截断
+     */
+    private static String truncate(String name, int maxBytes) {
+        int bytes = 0;
+        int index = 0;
+        while (index < name.length()) {
+            int codePoint = name.codePointAt(index);
+            int length = utf8Length(new String(Character.toChars(codePoint)));
+            if (bytes + length > maxBytes) {
+                break;
+            }
+            bytes += length;
+            index += Character.charCount(codePoint);
+        }
+        return name.substring(0, index);
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,206 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import org.opengis.feature.simple.SimpleFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * shp入库流水线：读取线程解析要素，编码线程池转换行数据，多个写入线程各自占用连接并发写入。
+ * 各阶段之间通过有界队列传递批次，队列满时上游阻塞等待
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/8
+ */
+class Shp2DbPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(Shp2DbPipeline.class);
+
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * 队列结束标识，按引用比较
+     */
+    private final FeatureBatch<SimpleFeature> endOfFeatures = new FeatureBatch<>(-1, new ArrayList<>(0));
+    private final FeatureBatch<Object[]> endOfRows = new FeatureBatch<>(-1, new ArrayList<>(0));
+
+    private final int encoderThreads;
+
+    private final int writerThreads;
+
+    private final BlockingQueue<FeatureBatch<SimpleFeature>> featureQueue;
+
+    private final BlockingQueue<FeatureBatch<Object[]>> rowQueue;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private final AtomicInteger runningEncoders;
+
+    private final Shp2DbListener listener;
+
+    Shp2DbPipeline(Shp2DbOptions options) {
+        this.encoderThreads = Math.max(options.getEncoderThreads(), 1);
+        this.writerThreads = Math.max(options.getWriterThreads(), 1);
+        this.featureQueue = new ArrayBlockingQueue<>(options.getQueueCapacity());
+        this.rowQueue = new ArrayBlockingQueue<>(options.getQueueCapacity());
+        this.runningEncoders = new AtomicInteger(encoderThreads);
+        this.listener = options.getListener();
+    }
+
+    /**
+     * 执行流水线，读取阶段在当前线程执行
+     *
+     * @param batchReader   要素批次读取器
+     * @param encoder       行编码器
+     * @param writerFactory 写入器工厂，每个写入线程创建一个
+     * @return 读取的要素数量
+     */
+    long run(FeatureBatchReader batchReader, FeatureRowEncoder encoder, Supplier<FeatureRowWriter> writerFactory) {
+        ExecutorService executor = Executors.newFixedThreadPool(encoderThreads + writerThreads, new PipelineThreadFactory());
+        for (int i = 0; i < encoderThreads; i++) {
+            executor.execute(() -> encodeLoop(encoder));
+        }
+        for (int i = 0; i < writerThreads; i++) {
+            executor.execute(() -> writeLoop(writerFactory));
+        }
+
+        long featureCount = 0;
+        try {
+            FeatureBatch<SimpleFeature> batch;
+            while (failure.get() == null && (batch = batchReader.next()) != null) {
+                featureCount += batch.size();
+                put(featureQueue, batch);
+                listener.onQueueDepth(featureQueue.size(), rowQueue.size());
+            }
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            for (int i = 0; i < encoderThreads; i++) {
+                put(featureQueue, endOfFeatures);
+            }
+            awaitTermination(executor);
+        }
+
+        Throwable e = failure.get();
+        if (e != null) {
+            throw new ShpException(e.getMessage(), e);
+        }
+        return featureCount;
+    }
+
+    private void encodeLoop(FeatureRowEncoder encoder) {
+        try {
+            FeatureBatch<SimpleFeature> batch;
+            while ((batch = take(featureQueue)) != null && batch != endOfFeatures) {
+                if (!put(rowQueue, encoder.encode(batch))) {
+                    break;
+                }
+            }
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            //最后一个编码线程结束后通知写入线程
+            if (runningEncoders.decrementAndGet() == 0) {
+                for (int i = 0; i < writerThreads; i++) {
+                    put(rowQueue, endOfRows);
+                }
+            }
+        }
+    }
+
+    private void writeLoop(Supplier<FeatureRowWriter> writerFactory) {
+        try (FeatureRowWriter writer = writerFactory.get()) {
+            FeatureBatch<Object[]> batch;
+            while ((batch = take(rowQueue)) != null) {
+                if (batch == endOfRows) {
+                    writer.finish();
+                    return;
+                }
+                listener.onQueueDepth(featureQueue.size(), rowQueue.size());
+                writer.write(batch);
+            }
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    private void fail(Throwable e) {
+        if (failure.compareAndSet(null, e)) {
+            log.error("shp入库流水线执行失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 放入队列，队列满时等待，流水线失败后放弃
+     */
+    private <T> boolean put(BlockingQueue<T> queue, T item) {
+        try {
+            while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (failure.get() != null) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+            return false;
+        }
+    }
+
+    /**
+     * 从队列取出，流水线失败后返回null
+     */
+    private <T> T take(BlockingQueue<T> queue) {
+        try {
+            T item;
+            while ((item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                if (failure.get() != null) {
+                    return null;
+                }
+            }
+            return item;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+            return null;
+        }
+    }
+
+    private void awaitTermination(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                log.debug("等待入库流水线结束，待编码批次{}，待写入批次{}", featureQueue.size(), rowQueue.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+            executor.shutdownNow();
+        }
+    }
+
+    private static class PipelineThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "shp2db-pipeline-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
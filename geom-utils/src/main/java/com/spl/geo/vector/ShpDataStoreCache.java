@@ -0,0 +1,233 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 进程内共享的shp数据源缓存，按规范路径以及shp、shx、dbf、prj、cpg的修改时间和文件大小缓存打开的ShapefileDataStore，按最近使用淘汰。
+ * 使用时通过acquire获取租约并在使用后关闭，返回的要素集合在每次遍历时获取租约，引用计数为0的数据源在淘汰时立即释放，
+ * 仍在使用的数据源从缓存中移除，最后一个租约关闭时释放。任一文件被修改后旧的数据源会被淘汰。
+ * 缓存数量通过系统属性spl.shp.cache.size设置，默认32
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/4/10
+ */
+final class ShpDataStoreCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ShpDataStoreCache.class);
+
+    static final int DEFAULT_MAX_ENTRIES = Integer.getInteger("spl.shp.cache.size", 32);
+
+    private static final ShpDataStoreCache INSTANCE = new ShpDataStoreCache(DEFAULT_MAX_ENTRIES);
+
+    /**
+     * 参与版本判断的附属文件，qix由读取时生成，不参与
+     */
+    private static final String[] SIDECAR_SUFFIXES = {".shx", DbfUtils.DBF_SUFFIX, ".prj", ".cpg"};
+
+    private final int maxEntries;
+
+    /**
+     * 按访问顺序排列，最久未使用的在前
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    ShpDataStoreCache(int maxEntries) {
+        this.maxEntries = Math.max(maxEntries, 1);
+    }
+
+    static ShpDataStoreCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取shp的数据源，引用计数加1。
+     * 打开数据源需要读取文件头，在锁外进行，发布前再次检查，其他线程已打开同一版本时释放本次打开的数据源
+     *
+     * @param shpFile shp文件
+     * @return 租约，使用完数据源后关闭
+     */
+    Lease acquire(File shpFile) {
+        String path;
+        try {
+            path = shpFile.getCanonicalPath();
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+        String key = versionKey(shpFile, path);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                entry.refCount++;
+                return new Lease(entry);
+            }
+        }
+        ShapefileDataStore store = createStore(shpFile);
+        Lease lease;
+        boolean duplicate;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            duplicate = entry != null;
+            if (entry == null) {
+                evictStale(path);
+                entry = new Entry(key, path, store);
+                entries.put(key, entry);
+                trim();
+            }
+            entry.refCount++;
+            lease = new Lease(entry);
+        }
+        if (duplicate) {
+            store.dispose();
+        }
+        return lease;
+    }
+
+    /**
+     * 淘汰全部数据源，正在使用的在租约关闭时释放
+     */
+    synchronized void clear() {
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            evict(entry);
+        }
+    }
+
+    /**
+     * @return 缓存的数据源数量
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 同一路径的旧版本数据源已过期
+     */
+    private void evictStale(String path) {
+        List<Entry> stale = new ArrayList<>();
+        for (Entry cached : entries.values()) {
+            if (cached.path.equals(path)) {
+                stale.add(cached);
+            }
+        }
+        for (Entry cached : stale) {
+            log.debug("shp文件已修改，淘汰缓存的数据源：{}", path);
+            evict(cached);
+        }
+    }
+
+    /**
+     * 缓存键，包含shp及shx、dbf、prj、cpg的修改时间和大小，任一文件被替换都视为新版本
+     */
+    static String versionKey(File shpFile, String path) {
+        StringBuilder key = new StringBuilder(path).append('@').append(shpFile.lastModified()).append(':').append(shpFile.length());
+        String name = shpFile.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        for (String suffix : SIDECAR_SUFFIXES) {
+            File sidecar = new File(shpFile.getParentFile(), baseName + suffix);
+            key.append('|').append(sidecar.lastModified()).append(':').append(sidecar.length());
+        }
+        return key.toString();
+    }
+
+    private void trim() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            log.debug("缓存数量超过{}，淘汰数据源：{}", maxEntries, eldest.path);
+            dispose(eldest);
+        }
+    }
+
+    private void evict(Entry entry) {
+        entries.remove(entry.key);
+        dispose(entry);
+    }
+
+    private void dispose(Entry entry) {
+        entry.evicted = true;
+        if (entry.refCount == 0) {
+            entry.store.dispose();
+        }
+    }
+
+    private synchronized void release(Entry entry) {
+        entry.refCount--;
+        if (entry.refCount == 0 && entry.evicted) {
+            entry.store.dispose();
+        }
+    }
+
+    private static ShapefileDataStore createStore(File shpFile) {
+        Map<String, Serializable> params = new HashMap<>(4);
+        try {
+            params.put(ShapefileDataStoreFactory.URLP.key, shpFile.toURI().toURL());
+            params.put(ShapefileDataStoreFactory.ENABLE_SPATIAL_INDEX.key, Boolean.TRUE);
+            //普通读取不在用户数据旁生成qix，按范围读取时由ReadShpUtils创建
+            params.put(ShapefileDataStoreFactory.CREATE_SPATIAL_INDEX.key, Boolean.FALSE);
+            return (ShapefileDataStore) new ShapefileDataStoreFactory().createDataStore(params);
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 数据源租约，关闭后引用计数减1
+     */
+    final class Lease implements AutoCloseable {
+
+        private final Entry entry;
+
+        private boolean closed;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        ShapefileDataStore getStore() {
+            return entry.store;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(entry);
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final String key;
+
+        private final String path;
+
+        private final ShapefileDataStore store;
+
+        private int refCount;
+
+        private boolean evicted;
+
+        private Entry(String key, String path, ShapefileDataStore store) {
+            this.key = key;
+            this.path = path;
+            this.store = store;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.entity.ShpPartInfo;
+import com.spl.geo.exception.ShpException;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.CRS;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 逐行将查询结果写入shp，读取到第一个非空地理要素时根据字段类型和地理要素类型创建shp，之后每行直接写入文件。
+ * 之前地理要素为空的行暂存在内存中，创建shp后写入。设置分卷上限时超过上限写入下一个分卷。
+ * 地理要素按EWKB字节解析，不经过文本转换
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/29
+ */
+class ShpExportRowHandler implements RowCallbackHandler, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ShpExportRowHandler.class);
+
+    private static final Pattern GEOM_COLUMN_PATTERN = Pattern.compile("(?i)(geom|shape|wkt)");
+
+    private static final String GEOM_FIELD = "the_geom";
+
+    private static final int LOG_INTERVAL = 100000;
+
+    private final File shpFile;
+
+    private final Charset charset;
+
+    private final long maxPartBytes;
+
+    private final AtomicInteger partCounter;
+
+    private final EwkbGeometryReader geometryReader = new EwkbGeometryReader();
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    /**
+     * 创建shp之前地理要素为空的行
+     */
+    private final List<Object[]> pendingRows = new ArrayList<>();
+
+    private ShpPartWriter partWriter;
+
+    private Long minKey;
+
+    private Long maxKey;
+
+    /**
+     * 取消标记，并行导出中其他范围失败时置位，在读取下一行时结束查询
+     */
+    private AtomicBoolean cancelled;
+
+    /**
+     * 每行的地理要素和属性值，逐行复用
+     */
+    private Object[] values;
+
+    /**
+     * 地理要素所在的列，从1开始
+     */
+    private int geomColumn;
+
+    /**
+     * 地理要素列是否为wkt文本，否则为PostGIS的geometry
+     */
+    private boolean wktColumn;
+
+    /**
+     * 每个属性对应的列，从1开始，下标与shp的属性顺序一致(第0个为地理要素)，为空时尚未读取字段信息
+     */
+    private int[] attributeColumns;
+
+    /**
+     * 每个属性的名称和类型，下标与attributeColumns一致
+     */
+    private String[] attributeNames;
+
+    private Class<?>[] attributeTypes;
+
+    private long count;
+
+    /**
+     * @param shpFile 输出的shp文件，所在文件夹需已清空
+     * @param charset 属性编码
+     */
+    ShpExportRowHandler(File shpFile, Charset charset) {
+        this(shpFile, charset, 0, new AtomicInteger());
+    }
+
+    /**
+     * @param shpFile      输出的shp文件，分卷时以文件名加_part序号命名
+     * @param charset      属性编码
+     * @param maxPartBytes 每个分卷的字节数上限，小于等于0时不分卷
+     * @param partCounter  分卷序号，并行导出时共用
+     */
+    ShpExportRowHandler(File shpFile, Charset charset, long maxPartBytes, AtomicInteger partCounter) {
+        this.shpFile = shpFile;
+        this.charset = charset;
+        this.maxPartBytes = maxPartBytes;
+        this.partCounter = partCounter;
+    }
+
+    /**
+     * 设置按主键范围导出时的范围，记录到分卷信息中
+     */
+    void setKeyRange(Long minKey, Long maxKey) {
+        this.minKey = minKey;
+        this.maxKey = maxKey;
+    }
+
+    /**
+     * 设置取消标记，JDBC游标不响应线程中断，通过标记在读取下一行时抛出异常结束查询
+     */
+    void setCancelled(AtomicBoolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+        if (cancelled != null && cancelled.get()) {
+            throw new ShpException("导出已取消");
+        }
+        if (attributeColumns == null) {
+            readColumns(rs.getMetaData());
+        }
+        Geometry geometry = readGeometry(rs);
+        values[0] = geometry;
+        for (int i = 1; i < attributeColumns.length; i++) {
+            values[i] = readValue(rs, attributeColumns[i]);
+        }
+        if (partWriter == null) {
+            if (geometry == null || geometry.isEmpty()) {
+                //没有地理要素时无法确定图层类型，暂存到第一个非空地理要素
+                pendingRows.add(values.clone());
+            } else {
+                createShp(shpGeometryType(geometry));
+                partWriter.write(values);
+            }
+        } else {
+            partWriter.write(values);
+        }
+        count++;
+        if (count % LOG_INTERVAL == 0) {
+            log.debug("已导出要素{}条", count);
+        }
+    }
+
+    /**
+     * @return 已写入的要素数量
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return 写入的分卷信息，没有数据时为空
+     */
+    List<ShpPartInfo> getParts() {
+        return partWriter == null ? Collections.emptyList() : partWriter.getParts();
+    }
+
+    @Override
+    public void close() {
+        if (partWriter == null && !pendingRows.isEmpty()) {
+            //地理要素全部为空时与list2Shp一致按多面处理
+            createShp(MultiPolygon.class);
+        }
+        if (partWriter != null) {
+            partWriter.close();
+        }
+    }
+
+    private void readColumns(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        geomColumn = -1;
+        for (int column = 1; column <= columnCount; column++) {
+            if (GEOM_COLUMN_PATTERN.matcher(metaData.getColumnLabel(column)).matches()) {
+                geomColumn = column;
+                wktColumn = "wkt".equalsIgnoreCase(metaData.getColumnLabel(column));
+                break;
+            }
+        }
+        if (geomColumn < 0) {
+            throw new ShpException("查询结果中没有geom、shape或wkt字段");
+        }
+
+        attributeColumns = new int[columnCount];
+        attributeNames = new String[columnCount];
+        attributeTypes = new Class<?>[columnCount];
+        int index = 1;
+        for (int column = 1; column <= columnCount; column++) {
+            if (column == geomColumn) {
+                continue;
+            }
+            attributeNames[index] = metaData.getColumnLabel(column);
+            attributeTypes[index] = mapType(metaData.getColumnType(column));
+            attributeColumns[index++] = column;
+        }
+        values = new Object[columnCount];
+    }
+
+    /**
+     * 创建shp并写入暂存的行
+     *
+     * @param geometryType shp只能有一种地理要素类型，根据第一个非空地理要素确定
+     */
+    private void createShp(Class<? extends Geometry> geometryType) {
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName("Location");
+        try {
+            typeBuilder.setCRS(CRS.decode("EPSG:4490", true));
+        } catch (Exception e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+        typeBuilder.add(GEOM_FIELD, geometryType);
+        for (int i = 1; i < attributeColumns.length; i++) {
+            typeBuilder.add(attributeNames[i], attributeTypes[i]);
+        }
+        SimpleFeatureType type = typeBuilder.buildFeatureType();
+
+        String name = shpFile.getName();
+        partWriter = new ShpPartWriter(shpFile.getParentFile(), name.substring(0, name.length() - ShpFileUtils.SHP_SUFFIX.length()),
+                type, charset, maxPartBytes, partCounter);
+        partWriter.setKeyRange(minKey, maxKey);
+        for (Object[] row : pendingRows) {
+            partWriter.write(row);
+        }
+        pendingRows.clear();
+    }
+
+    /**
+     * geometry字段按字节读取十六进制EWKB，bytea字段(ST_AsEWKB)直接读取二进制，wkt字段按文本读取。
+     * 点转换为多点，避免同一图层中点和多点混合时无法写入
+     */
+    private Geometry readGeometry(ResultSet rs) throws SQLException {
+        Geometry geometry = readRawGeometry(rs);
+        if (geometry instanceof Point && !geometry.isEmpty()) {
+            return geometryFactory.createMultiPoint(new Point[]{(Point) geometry});
+        }
+        return geometry;
+    }
+
+    private Geometry readRawGeometry(ResultSet rs) throws SQLException {
+        if (wktColumn) {
+            return geometryReader.read(rs.getString(geomColumn));
+        }
+        byte[] bytes = rs.getBytes(geomColumn);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            return geometryReader.readBytes(bytes);
+        } catch (ShpException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    private static Object readValue(ResultSet rs, int column) throws SQLException {
+        Object value = rs.getObject(column);
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).doubleValue();
+        }
+        return value;
+    }
+
+    /**
+     * 地理要素类型，点、线和面统一为多点、多线和多面，避免同一图层中单个和多个混合时无法写入
+     */
+    private static Class<? extends Geometry> shpGeometryType(Geometry geometry) {
+        if (geometry instanceof Point || geometry instanceof MultiPoint) {
+            return MultiPoint.class;
+        } else if (geometry instanceof LineString || geometry instanceof MultiLineString) {
+            return MultiLineString.class;
+        }
+        return MultiPolygon.class;
+    }
+
+    private static Class<?> mapType(int sqlType) {
+        switch (sqlType) {
+            case Types.SMALLINT:
+            case Types.TINYINT:
+            case Types.INTEGER:
+                return Integer.class;
+            case Types.BIGINT:
+                return Long.class;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return Double.class;
+            case Types.DATE:
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return Date.class;
+            default:
+                return String.class;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.spl.geo.vector;
+
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * 按记录序号范围拆分shp的Spliterator，每个范围在第一次读取时打开自己的读取器，通过shx定位到范围起点后顺序读取。
+ * 并行流中每个工作线程只解码自己范围内的记录，互不共享读取器
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/4/8
+ */
+class ShpFeatureSpliterator implements Spliterator<SimpleFeature> {
+
+    private final File shpFile;
+
+    private final Charset charset;
+
+    private final SimpleFeatureType schema;
+
+    /**
+     * 拆分后每个范围的最小记录数，过小时打开读取器的开销超过并行的收益
+     */
+    private final long minSplitSize;
+
+    /**
+     * 打开的读取器，流关闭时统一关闭
+     */
+    private final Queue<ShpIndexedFeatureReader> openedReaders;
+
+    private long position;
+
+    private final long end;
+
+    private ShpIndexedFeatureReader reader;
+
+    /**
+     * @param shpFile       shp文件
+     * @param charset       属性编码
+     * @param schema        要素类型
+     * @param start         起始记录序号，包含
+     * @param end           结束记录序号，不包含
+     * @param minSplitSize  每个范围的最小记录数
+     * @param openedReaders 打开的读取器
+     */
+    ShpFeatureSpliterator(File shpFile, Charset charset, SimpleFeatureType schema, long start, long end,
+                          long minSplitSize, Queue<ShpIndexedFeatureReader> openedReaders) {
+        this.shpFile = shpFile;
+        this.charset = charset;
+        this.schema = schema;
+        this.position = start;
+        this.end = end;
+        this.minSplitSize = minSplitSize;
+        this.openedReaders = openedReaders;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super SimpleFeature> action) {
+        if (position >= end) {
+            return false;
+        }
+        if (reader == null) {
+            reader = new ShpIndexedFeatureReader(shpFile, charset, schema);
+            openedReaders.add(reader);
+            reader.seek(position);
+        }
+        if (!reader.hasNext()) {
+            position = end;
+            release();
+            return false;
+        }
+        action.accept(reader.next());
+        position++;
+        if (position >= end) {
+            release();
+        }
+        return true;
+    }
+
+    @Override
+    public Spliterator<SimpleFeature> trySplit() {
+        //已开始读取的范围不再拆分
+        if (reader != null || end - position < minSplitSize * 2) {
+            return null;
+        }
+        long middle = position + (end - position) / 2;
+        ShpFeatureSpliterator prefix = new ShpFeatureSpliterator(shpFile, charset, schema, position, middle,
+                minSplitSize, openedReaders);
+        position = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - position;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * 范围读取完成后立即关闭读取器，释放文件句柄
+     */
+    private void release() {
+        if (reader != null) {
+            openedReaders.remove(reader);
+            reader.close();
+            reader = null;
+        }
+    }
+}
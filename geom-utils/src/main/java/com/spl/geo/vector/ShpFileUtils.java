@@ -2,13 +2,27 @@ package com.spl.geo.vector;
 
 import com.spl.geo.common.GeoFileUtils;
 import com.spl.geo.exception.ShpException;
-import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -22,6 +36,13 @@ public class ShpFileUtils {
     public static final String SHP_SUFFIX = ".shp";
     public static final String SHP_SUFFIX_REG = "(\\.shp|\\.dbf|\\.prj|\\.sbn|\\.sbx|\\.shx|\\.xml)";
 
+    private static final Logger log = LoggerFactory.getLogger(ShpFileUtils.class);
+
+    /**
+     * 拷贝shp时包含的附属文件
+     */
+    private static final String[] COPY_SUFFIXES = {SHP_SUFFIX, ".shx", ".dbf", ".prj", ".cpg"};
+
     private ShpFileUtils() {
     }
 
@@ -49,6 +70,29 @@ public class ShpFileUtils {
         throw new ShpException("提供路径不符合shp要求");
     }
 
+    /**
+     * 获取路径下所有的shp文件，包括子文件夹
+     *
+     * @param path 查找的路径，可以以shp结尾，也可以文件夹
+     * @return 以.shp结尾的文件集合
+     */
+    public static List<File> listShpFiles(String path) {
+        File shpFile = new File(path);
+        if (shpFile.isFile() && path.endsWith(SHP_SUFFIX)) {
+            return Collections.singletonList(shpFile);
+        }
+        if (!shpFile.isDirectory()) {
+            throw new ShpException("提供路径不符合shp要求");
+        }
+        try (Stream<Path> pathStream = Files.walk(shpFile.toPath())) {
+            return pathStream.map(Path::toFile)
+                    .filter(file -> file.isFile() && file.getName().endsWith(SHP_SUFFIX))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
     public static File getEmptyShpFromPath(String shpPath) {
         //如果传递的为shp后缀，则以此作为shp文件，如果文件夹的路径，则以此文件夹名称作为shp名称
         File shpFile = new File(shpPath);
@@ -64,13 +108,77 @@ public class ShpFileUtils {
     }
 
     /**
-     * 拷贝Shp文件
+     * 拷贝Shp文件，各附属文件并行通过FileChannel.transferTo拷贝
      *
      * @param srcPath  需要拷贝的shp文件按路径,必须以.shp结尾
      * @param descPath shp拷贝的目标文件或者文件夹，
      *                 如果以".shp"结尾，则为文件，否则为文件夹
      */
     public static void copyShp(String srcPath, String descPath) {
+        copyShp(srcPath, descPath, false);
+    }
+
+    /**
+     * 拷贝Shp文件
+     *
+     * @param srcPath  需要拷贝的shp文件按路径,必须以.shp结尾
+     * @param descPath shp拷贝的目标文件或者文件夹，
+     *                 如果以".shp"结尾，则为文件，否则为文件夹
+     * @param hardLink 是否优先创建硬链接，源和目标在同一文件系统时不拷贝数据，不支持时拷贝。
+     *                 硬链接与源文件共用数据，目标文件只能读取或整体替换，不能原地修改
+     */
+    public static void copyShp(String srcPath, String descPath, boolean hardLink) {
+        CopyPlan plan = resolveCopyPlan(srcPath, descPath);
+        plan.prepare();
+        //附属文件之间互不依赖，并行拷贝
+        plan.pairs.parallelStream().forEach(pair -> copyFile(pair[0], pair[1], hardLink));
+    }
+
+    /**
+     * 批量拷贝Shp文件，多个图层并行拷贝
+     *
+     * @param srcToDescPaths 源shp路径(以.shp结尾)与目标文件或文件夹的对应关系
+     * @param hardLink       是否优先创建硬链接
+     * @param threads        并行线程数
+     */
+    public static void copyShpBatch(Map<String, String> srcToDescPaths, boolean hardLink, int threads) {
+        //先检查全部图层，路径错误时不清空文件夹也不拷贝任何文件
+        List<CopyPlan> plans = new ArrayList<>(srcToDescPaths.size());
+        for (Map.Entry<String, String> entry : srcToDescPaths.entrySet()) {
+            plans.add(resolveCopyPlan(entry.getKey(), entry.getValue()));
+        }
+        List<File[]> pairs = new ArrayList<>();
+        for (CopyPlan plan : plans) {
+            plan.prepare();
+            pairs.addAll(plan.pairs);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+        try {
+            List<Future<?>> futures = new ArrayList<>(pairs.size());
+            for (File[] pair : pairs) {
+                futures.add(executor.submit(() -> copyFile(pair[0], pair[1], hardLink)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ShpException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof ShpException ? (ShpException) cause : new ShpException(cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 解析需要拷贝的附属文件，直接按名称判断是否存在，不遍历源文件夹。
+     * 只做检查，不修改目标文件夹
+     *
+     * @return 拷贝计划
+     */
+    private static CopyPlan resolveCopyPlan(String srcPath, String descPath) {
         //源Shp文件夹处理
         if (!srcPath.endsWith(SHP_SUFFIX)) {
             throw new ShpException("srcPath必须以.shp结尾");
@@ -88,30 +196,95 @@ public class ShpFileUtils {
         File descFile = new File(descPath);
         String descShpName;
         File descShpFolder;
+        boolean clearFolder;
         //如果不以.shp结尾，则按照文件夹处理,shp名称按照源文件名称
         if (descPath.endsWith(SHP_SUFFIX)) {
             String shpName = descFile.getName();
             descShpName = shpName.substring(0, shpName.length() - 4);
             descShpFolder = descFile.getParentFile();
+            clearFolder = false;
         } else {
-            GeoFileUtils.clearFileContent(descFile);
             descShpFolder = descFile;
             descShpName = srcShpName;
+            clearFolder = true;
         }
 
-        String shpReg = "^" + srcShpName + "\\.(cpg|dbf|prj|shp|shx)$";
-        Stream.of(Objects.requireNonNull(srcShpFolder.listFiles())).forEach(file -> {
-            String name = file.getName();
-            if (file.getName().matches(shpReg)) {
-                String desc = name.replaceAll(shpReg, descShpName + ".$1");
-                File descTempFile = new File(descShpFolder, desc);
+        List<File[]> pairs = new ArrayList<>(COPY_SUFFIXES.length);
+        for (String suffix : COPY_SUFFIXES) {
+            File file = new File(srcShpFolder, srcShpName + suffix);
+            if (file.isFile()) {
+                File target = new File(descShpFolder, descShpName + suffix);
+                //目标与源为同一文件时，拷贝前删除目标会删除源文件
+                if (isSamePath(file, target)) {
+                    throw new ShpException("源文件与目标文件相同：" + file.getAbsolutePath());
+                }
+                pairs.add(new File[]{file, target});
+            }
+        }
+        return new CopyPlan(descShpFolder, clearFolder, pairs);
+    }
+
+    private static boolean isSamePath(File file, File other) {
+        try {
+            return file.getCanonicalFile().equals(other.getCanonicalFile());
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    private static void copyFile(File srcFile, File descFile, boolean hardLink) {
+        try {
+            Files.deleteIfExists(descFile.toPath());
+            if (hardLink) {
                 try {
-                    FileUtils.copyFile(file, descTempFile);
-                } catch (IOException e) {
-                    throw new ShpException(e.getMessage(), e);
+                    Files.createLink(descFile.toPath(), srcFile.toPath());
+                    return;
+                } catch (UnsupportedOperationException | IOException e) {
+                    //跨文件系统或文件系统不支持硬链接时拷贝
+                    log.debug("{}无法创建硬链接，改为拷贝：{}", descFile.getName(), e.getMessage());
                 }
             }
-        });
+            try (FileChannel in = FileChannel.open(srcFile.toPath(), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(descFile.toPath(), StandardOpenOption.CREATE,
+                         StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                //transferTo由内核直接拷贝，单次调用可能只传输部分数据
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+            //与FileUtils.copyFile一致保留修改时间
+            Files.setLastModifiedTime(descFile.toPath(), Files.getLastModifiedTime(srcFile.toPath()));
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
     }
 
+    /**
+     * 一个图层的拷贝计划，检查通过后再准备目标文件夹
+     */
+    private static final class CopyPlan {
+
+        private final File descFolder;
+
+        private final boolean clearFolder;
+
+        private final List<File[]> pairs;
+
+        private CopyPlan(File descFolder, boolean clearFolder, List<File[]> pairs) {
+            this.descFolder = descFolder;
+            this.clearFolder = clearFolder;
+            this.pairs = pairs;
+        }
+
+        private void prepare() {
+            if (clearFolder) {
+                GeoFileUtils.clearFileContent(descFolder);
+            }
+            if (!descFolder.exists() && !descFolder.mkdirs()) {
+                throw new ShpException("创建文件夹失败：" + descFolder.getAbsolutePath());
+            }
+        }
+    }
 }
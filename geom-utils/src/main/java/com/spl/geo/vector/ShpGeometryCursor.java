@@ -0,0 +1,489 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 通过内存映射直接读取shp的几何坐标，不解析dbf，也不创建SimpleFeature和Geometry对象。
+ * 游标每次移动到一条记录，坐标解码到复用的double数组(x、y交替存放)，部分起始下标解码到复用的int数组，
+ * 数组和坐标序列在下一次移动游标前有效。Z、M值不读取。
+ * 用法：
+ * <pre>
+ * try (ShpGeometryCursor cursor = ShpGeometryCursor.open(shpPath)) {
+ *     while (cursor.next()) {
+ *         double[] xy = cursor.getCoordinates();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * 非线程安全，多线程读取时每个线程打开一个游标
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/4/6
+ */
+public class ShpGeometryCursor implements AutoCloseable {
+
+    public static final int NULL_SHAPE = 0;
+    public static final int POINT = 1;
+    public static final int POLYLINE = 3;
+    public static final int POLYGON = 5;
+    public static final int MULTI_POINT = 8;
+    public static final int MULTI_PATCH = 31;
+
+    private static final int FILE_HEADER_BYTES = 100;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int SHX_RECORD_BYTES = 8;
+
+    private final FileChannel shpChannel;
+
+    private final FileChannel shxChannel;
+
+    private final MappedByteBuffer shpBuffer;
+
+    /**
+     * shx不存在时为null，此时不支持定位
+     */
+    private final MappedByteBuffer shxBuffer;
+
+    private final int shpLength;
+
+    private final int fileShapeType;
+
+    private final RecordCoordinateSequence partSequence = new RecordCoordinateSequence();
+
+    private double[] coordinates = new double[256];
+
+    private int[] partOffsets = new int[8];
+
+    /**
+     * 下一条记录在shp中的位置
+     */
+    private int nextPosition = FILE_HEADER_BYTES;
+
+    private long recordIndex = -1;
+
+    private int shapeType;
+
+    private int numParts;
+
+    private int numPoints;
+
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
+
+    private ShpGeometryCursor(File shpFile) throws IOException {
+        String name = shpFile.getName();
+        File shxFile = new File(shpFile.getParentFile(), name.substring(0, name.length() - ShpFileUtils.SHP_SUFFIX.length()) + ".shx");
+        this.shpChannel = FileChannel.open(shpFile.toPath(), StandardOpenOption.READ);
+        try {
+            this.shpBuffer = map(shpChannel);
+            this.shpBuffer.order(ByteOrder.LITTLE_ENDIAN);
+            this.shpLength = shpBuffer.limit();
+            this.fileShapeType = shpLength >= FILE_HEADER_BYTES ? shpBuffer.getInt(32) : NULL_SHAPE;
+            if (shxFile.exists()) {
+                this.shxChannel = FileChannel.open(shxFile.toPath(), StandardOpenOption.READ);
+                this.shxBuffer = map(shxChannel);
+                this.shxBuffer.order(ByteOrder.BIG_ENDIAN);
+            } else {
+                this.shxChannel = null;
+                this.shxBuffer = null;
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开shp的几何游标
+     *
+     * @param shpPath shp路径，可以以shp结尾，也可以文件夹
+     * @return 游标，使用后需关闭
+     */
+    public static ShpGeometryCursor open(String shpPath) {
+        try {
+            return new ShpGeometryCursor(ShpFileUtils.getShpFile(shpPath));
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new ShpException("shp文件超过2GB，无法映射读取");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    /**
+     * 移动到下一条记录
+     *
+     * @return 没有记录时返回false
+     */
+    public boolean next() {
+        if (nextPosition + RECORD_HEADER_BYTES > shpLength) {
+            return false;
+        }
+        //记录头为大端：记录号、内容长度(16位字)
+        int contentBytes = Integer.reverseBytes(shpBuffer.getInt(nextPosition + 4)) * 2;
+        int contentPosition = nextPosition + RECORD_HEADER_BYTES;
+        if (contentBytes < 4 || contentPosition + contentBytes > shpLength) {
+            return false;
+        }
+        nextPosition = contentPosition + contentBytes;
+        recordIndex++;
+        decode(contentPosition, contentBytes);
+        return true;
+    }
+
+    /**
+     * 定位到指定序号的记录，之后调用next读取该记录，需要shx文件
+     *
+     * @param index 记录序号，从0开始
+     */
+    public void seek(long index) {
+        if (shxBuffer == null) {
+            throw new ShpException("缺少shx文件，无法定位记录");
+        }
+        if (index < 0 || index >= getRecordCount()) {
+            throw new ShpException("记录序号" + index + "超出范围");
+        }
+        nextPosition = shxBuffer.getInt((int) (FILE_HEADER_BYTES + index * SHX_RECORD_BYTES)) * 2;
+        recordIndex = index - 1;
+    }
+
+    /**
+     * @return 记录总数，根据shx计算，没有shx时返回-1
+     */
+    public long getRecordCount() {
+        return shxBuffer == null ? -1 : (shxBuffer.limit() - FILE_HEADER_BYTES) / SHX_RECORD_BYTES;
+    }
+
+    /**
+     * 解析记录内容，部分数和点数在分配数组前按记录长度校验，损坏的记录抛出ShpException
+     *
+     * @param position     记录内容的位置
+     * @param contentBytes 记录头中的内容长度
+     */
+    private void decode(int position, int contentBytes) {
+        shapeType = shpBuffer.getInt(position);
+        numParts = 0;
+        numPoints = 0;
+        switch (baseShapeType(shapeType)) {
+            case POINT:
+                numParts = 1;
+                numPoints = 1;
+                checkLength(20, contentBytes);
+                ensureCapacity(1, 1);
+                partOffsets[0] = 0;
+                coordinates[0] = shpBuffer.getDouble(position + 4);
+                coordinates[1] = shpBuffer.getDouble(position + 12);
+                minX = maxX = coordinates[0];
+                minY = maxY = coordinates[1];
+                break;
+            case MULTI_POINT:
+                checkLength(40, contentBytes);
+                readBox(position);
+                numPoints = shpBuffer.getInt(position + 36);
+                numParts = 1;
+                //类型、范围、点数之后为各点坐标
+                checkLength(40 + 16L * numPoints, contentBytes);
+                ensureCapacity(1, numPoints);
+                partOffsets[0] = 0;
+                readPoints(position + 40);
+                break;
+            case POLYLINE:
+            case POLYGON:
+            case MULTI_PATCH:
+                checkLength(44, contentBytes);
+                readBox(position);
+                numParts = shpBuffer.getInt(position + 36);
+                numPoints = shpBuffer.getInt(position + 40);
+                //MultiPatch在部分下标之后还有部分类型
+                int partBytes = baseShapeType(shapeType) == MULTI_PATCH ? 8 : 4;
+                checkLength(44 + (long) partBytes * numParts + 16L * numPoints, contentBytes);
+                ensureCapacity(numParts, numPoints);
+                int partsPosition = position + 44;
+                for (int i = 0; i < numParts; i++) {
+                    int offset = shpBuffer.getInt(partsPosition + i * 4);
+                    if (offset < 0 || offset > numPoints) {
+                        String message = "shp记录" + (recordIndex + 1) + "已损坏：部分" + i + "的起点" + offset + "超出点数" + numPoints;
+                        numParts = 0;
+                        numPoints = 0;
+                        throw new ShpException(message);
+                    }
+                    partOffsets[i] = offset;
+                }
+                int pointsPosition = partsPosition + numParts * partBytes;
+                readPoints(pointsPosition);
+                break;
+            default:
+                numParts = 0;
+                numPoints = 0;
+                minX = minY = maxX = maxY = Double.NaN;
+        }
+    }
+
+    /**
+     * 校验部分数、点数非负，且所需的字节数不超过记录长度
+     */
+    private void checkLength(long requiredBytes, int contentBytes) {
+        if (numParts < 0 || numPoints < 0 || requiredBytes > contentBytes) {
+            String message = "shp记录" + (recordIndex + 1) + "已损坏：部分数" + numParts + "，点数" + numPoints
+                    + "，需要" + requiredBytes + "字节，记录长度" + contentBytes + "字节";
+            //损坏的记录按空记录处理，调用方捕获异常后可继续读取下一条
+            numParts = 0;
+            numPoints = 0;
+            throw new ShpException(message);
+        }
+    }
+
+    private void readBox(int position) {
+        minX = shpBuffer.getDouble(position + 4);
+        minY = shpBuffer.getDouble(position + 12);
+        maxX = shpBuffer.getDouble(position + 20);
+        maxY = shpBuffer.getDouble(position + 28);
+    }
+
+    private void readPoints(int position) {
+        int count = numPoints * 2;
+        for (int i = 0; i < count; i++) {
+            coordinates[i] = shpBuffer.getDouble(position + i * 8);
+        }
+    }
+
+    private void ensureCapacity(int parts, int points) {
+        if (partOffsets.length < parts) {
+            partOffsets = new int[Math.max(parts, partOffsets.length * 2)];
+        }
+        if (coordinates.length < points * 2) {
+            coordinates = new double[Math.max(points * 2, coordinates.length * 2)];
+        }
+    }
+
+    /**
+     * Z、M类型与二维类型的坐标布局相同，按二维类型解析
+     */
+    private static int baseShapeType(int type) {
+        if (type == MULTI_PATCH) {
+            return MULTI_PATCH;
+        }
+        return type % 10 == 0 ? NULL_SHAPE : type % 10;
+    }
+
+    /**
+     * @return 文件头中的几何类型
+     */
+    public int getFileShapeType() {
+        return fileShapeType;
+    }
+
+    /**
+     * @return 当前记录的序号，从0开始
+     */
+    public long getRecordIndex() {
+        return recordIndex;
+    }
+
+    /**
+     * @return 当前记录的几何类型，Z、M类型返回原始值
+     */
+    public int getShapeType() {
+        return shapeType;
+    }
+
+    public boolean isNull() {
+        return numPoints == 0;
+    }
+
+    public int getNumParts() {
+        return numParts;
+    }
+
+    public int getNumPoints() {
+        return numPoints;
+    }
+
+    /**
+     * @return 当前记录的坐标，x、y交替存放，有效长度为2*numPoints，下一次移动游标后被覆盖
+     */
+    public double[] getCoordinates() {
+        return coordinates;
+    }
+
+    /**
+     * @return 每个部分第一个点的下标，有效长度为numParts，下一次移动游标后被覆盖
+     */
+    public int[] getPartOffsets() {
+        return partOffsets;
+    }
+
+    /**
+     * @param part 部分序号
+     * @return 部分的点数
+     */
+    public int getPartSize(int part) {
+        int end = part + 1 < numParts ? partOffsets[part + 1] : numPoints;
+        return end - partOffsets[part];
+    }
+
+    /**
+     * 获取部分的坐标序列，序列直接引用游标的坐标数组，每次调用返回同一个实例，
+     * 可直接用于Area.ofRingSigned、Length.ofLine等JTS算法
+     *
+     * @param part 部分序号
+     * @return 复用的坐标序列
+     */
+    public CoordinateSequence getPartSequence(int part) {
+        partSequence.bind(coordinates, partOffsets[part], getPartSize(part));
+        return partSequence;
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * 关闭文件，映射的内存在回收后释放
+     */
+    @Override
+    public void close() {
+        try {
+            if (shpChannel != null) {
+                shpChannel.close();
+            }
+            if (shxChannel != null) {
+                shxChannel.close();
+            }
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 引用游标坐标数组中一段二维坐标的只读序列
+     */
+    private static class RecordCoordinateSequence implements CoordinateSequence {
+
+        private double[] xy;
+
+        private int offset;
+
+        private int size;
+
+        void bind(double[] xy, int offset, int size) {
+            this.xy = xy;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public int getDimension() {
+            return 2;
+        }
+
+        @Override
+        public Coordinate getCoordinate(int i) {
+            return getCoordinateCopy(i);
+        }
+
+        @Override
+        public Coordinate getCoordinateCopy(int i) {
+            return new Coordinate(getX(i), getY(i));
+        }
+
+        @Override
+        public void getCoordinate(int index, Coordinate coord) {
+            coord.x = getX(index);
+            coord.y = getY(index);
+        }
+
+        @Override
+        public double getX(int index) {
+            return xy[(offset + index) * 2];
+        }
+
+        @Override
+        public double getY(int index) {
+            return xy[(offset + index) * 2 + 1];
+        }
+
+        @Override
+        public double getOrdinate(int index, int ordinateIndex) {
+            switch (ordinateIndex) {
+                case CoordinateSequence.X:
+                    return getX(index);
+                case CoordinateSequence.Y:
+                    return getY(index);
+                default:
+                    return Double.NaN;
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void setOrdinate(int index, int ordinateIndex, double value) {
+            throw new UnsupportedOperationException("游标坐标序列只读");
+        }
+
+        @Override
+        public Coordinate[] toCoordinateArray() {
+            Coordinate[] coords = new Coordinate[size];
+            for (int i = 0; i < size; i++) {
+                coords[i] = getCoordinateCopy(i);
+            }
+            return coords;
+        }
+
+        @Override
+        public Envelope expandEnvelope(Envelope env) {
+            for (int i = 0; i < size; i++) {
+                env.expandToInclude(getX(i), getY(i));
+            }
+            return env;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public Object clone() {
+            return copy();
+        }
+
+        @Override
+        public CoordinateSequence copy() {
+            double[] copy = new double[size * 2];
+            System.arraycopy(xy, offset * 2, copy, 0, size * 2);
+            return new PackedCoordinateSequence.Double(copy, 2, 0);
+        }
+    }
+}
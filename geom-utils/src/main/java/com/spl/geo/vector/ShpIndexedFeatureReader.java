@@ -0,0 +1,132 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import org.geotools.data.shapefile.dbf.DbaseFileReader;
+import org.geotools.data.shapefile.files.ShpFiles;
+import org.geotools.data.shapefile.shp.IndexFile;
+import org.geotools.data.shapefile.shp.ShapefileReader;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.NoSuchElementException;
+
+/**
+ * 支持通过shx索引定位的要素读取器，要素的属性顺序与ShapefileDataStore的schema一致
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/10
+ */
+class ShpIndexedFeatureReader implements SimpleFeatureIterator {
+
+    private static final Logger log = LoggerFactory.getLogger(ShpIndexedFeatureReader.class);
+
+    private final ShapefileReader shpReader;
+
+    private final DbaseFileReader dbfReader;
+
+    private final IndexFile indexFile;
+
+    private final SimpleFeatureBuilder builder;
+
+    private final String typeName;
+
+    private int index;
+
+    ShpIndexedFeatureReader(File shpFile, Charset charset, SimpleFeatureType schema) {
+        ShapefileReader shp = null;
+        DbaseFileReader dbf = null;
+        try {
+            ShpFiles shpFiles = new ShpFiles(shpFile);
+            shp = new ShapefileReader(shpFiles, false, false, new GeometryFactory());
+            dbf = new DbaseFileReader(shpFiles, false, charset);
+            this.indexFile = new IndexFile(shpFiles, false);
+        } catch (IOException e) {
+            closeQuietly(shp, dbf);
+            throw new ShpException(e.getMessage(), e);
+        }
+        this.shpReader = shp;
+        this.dbfReader = dbf;
+        this.builder = new SimpleFeatureBuilder(schema);
+        this.typeName = schema.getTypeName();
+    }
+
+    /**
+     * 通过shx索引定位到指定序号的要素
+     *
+     * @param featureIndex 要素序号，从0开始
+     */
+    void seek(long featureIndex) {
+        try {
+            if (featureIndex >= indexFile.getRecordCount()) {
+                index = indexFile.getRecordCount();
+                return;
+            }
+            index = (int) featureIndex;
+            shpReader.goTo(indexFile.getOffsetInBytes(index));
+            //dbf的记录号从1开始
+            dbfReader.goTo(index + 1);
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            return index < indexFile.getRecordCount() && shpReader.hasNext() && dbfReader.hasNext();
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public SimpleFeature next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            ShapefileReader.Record record = shpReader.nextRecord();
+            Object[] values = dbfReader.readEntry();
+            builder.add(record.shape());
+            for (Object value : values) {
+                builder.add(value);
+            }
+            index++;
+            return builder.buildFeature(typeName + "." + index);
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(shpReader, dbfReader);
+        try {
+            indexFile.close();
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    private static void closeQuietly(ShapefileReader shp, DbaseFileReader dbf) {
+        try {
+            if (shp != null) {
+                shp.close();
+            }
+            if (dbf != null) {
+                dbf.close();
+            }
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import org.geotools.data.Query;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.collection.BaseSimpleFeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 从缓存数据源读取的要素集合，每次遍历时获取数据源租约，迭代器关闭时释放。
+ * 遍历期间数据源即使被淘汰也不会释放，遍历开始时文件已修改则读取新的数据源
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/4/10
+ */
+class ShpLeasedFeatureCollection extends BaseSimpleFeatureCollection {
+
+    private final File shpFile;
+
+    /**
+     * 查询条件，为空时读取全部要素
+     */
+    private final Query query;
+
+    ShpLeasedFeatureCollection(SimpleFeatureType schema, File shpFile, Query query) {
+        super(schema);
+        this.shpFile = shpFile;
+        this.query = query;
+    }
+
+    @Override
+    public SimpleFeatureIterator features() {
+        ShpDataStoreCache.Lease lease = ShpDataStoreCache.getInstance().acquire(shpFile);
+        try {
+            return new LeasedIterator(collection(lease).features(), lease);
+        } catch (IOException | RuntimeException e) {
+            lease.close();
+            throw e instanceof ShpException ? (ShpException) e : new ShpException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int size() {
+        try (ShpDataStoreCache.Lease lease = ShpDataStoreCache.getInstance().acquire(shpFile)) {
+            return collection(lease).size();
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public ReferencedEnvelope getBounds() {
+        try (ShpDataStoreCache.Lease lease = ShpDataStoreCache.getInstance().acquire(shpFile)) {
+            return collection(lease).getBounds();
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    private SimpleFeatureCollection collection(ShpDataStoreCache.Lease lease) throws IOException {
+        return query == null ? lease.getStore().getFeatureSource().getFeatures()
+                : lease.getStore().getFeatureSource().getFeatures(query);
+    }
+
+    /**
+     * 关闭时释放租约的迭代器
+     */
+    private static final class LeasedIterator implements SimpleFeatureIterator {
+
+        private final SimpleFeatureIterator delegate;
+
+        private final ShpDataStoreCache.Lease lease;
+
+        private LeasedIterator(SimpleFeatureIterator delegate, ShpDataStoreCache.Lease lease) {
+            this.delegate = delegate;
+            this.lease = lease;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public SimpleFeature next() {
+            return delegate.next();
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                lease.close();
+            }
+        }
+    }
+}
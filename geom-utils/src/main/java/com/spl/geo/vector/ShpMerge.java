@@ -7,6 +7,7 @@ import org.locationtech.jts.geom.*;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * shp合并
@@ -32,9 +33,11 @@ public class ShpMerge {
         SimpleFeatureType type = shpInfo.getRight();
         List<SimpleFeature> descFeatureList = GeometryUtils.collection2List(shpInfo.getKey());
 
+        //待合并的图层逐个要素读取，只有合并结果保留在内存中
         for (int i = 1; i < shpPathList.size(); i++) {
-            List<SimpleFeature> tempFeatureList = ReadShpUtils.getFeatureListFromShp(shpPathList.get(i));
-            mergerShp(tempFeatureList, descFeatureList);
+            try (Stream<SimpleFeature> tempFeatures = ReadShpUtils.streamFromShp(shpPathList.get(i))) {
+                mergerShp(tempFeatures, descFeatureList);
+            }
         }
 
         //输出结果集，即将shp2输出结果集
@@ -52,22 +55,23 @@ public class ShpMerge {
         Pair<SimpleFeatureCollection, SimpleFeatureType> shpInfo = ReadShpUtils.getShpInfo(shpPath1);
         SimpleFeatureType type = shpInfo.getRight();
 
-        //获取shp1的要素集合
-        List<SimpleFeature> featureList1 = ReadShpUtils.getFeatureListFromShp(shpPath1);
+        //shp1逐个要素读取，合并到shp2的要素集合
         List<SimpleFeature> featureList2 = ReadShpUtils.getFeatureListFromShp(shpPath2);
-        mergerShp(featureList1, featureList2);
+        try (Stream<SimpleFeature> features1 = ReadShpUtils.streamFromShp(shpPath1)) {
+            mergerShp(features1, featureList2);
+        }
 
         //输出结果集，即将shp2输出结果集
         WriteShpUtils.buildShpByFeatureList(featureList2, type, outShpPath);
     }
 
 
-    private static void mergerShp(List<SimpleFeature> srcFeatureList, List<SimpleFeature> descFeatureList) {
+    private static void mergerShp(Stream<SimpleFeature> srcFeatures, List<SimpleFeature> descFeatureList) {
         //featureList2 为输出结果
-        for (SimpleFeature feature : srcFeatureList) {
+        srcFeatures.forEachOrdered(feature -> {
             Geometry geometry1 = (Geometry) feature.getDefaultGeometry();
             if (geometry1 == null) {
-                continue;
+                return;
             }
             for (int i = descFeatureList.size() - 1; i >= 0; i--) {
                 SimpleFeature feature2 = descFeatureList.get(i);
@@ -81,7 +85,7 @@ public class ShpMerge {
             }
             feature.setDefaultGeometry(geometry1);
             descFeatureList.add(feature);
-        }
+        });
     }
 
     /**
@@ -0,0 +1,284 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 直接按二进制格式写入shp、shx、dbf、prj、cpg，不经过ShapefileDataStore、事务和SimpleFeature。
+ * 记录由ShpRecordEncoder编码到复用的缓冲区后批量写入文件通道，shp、shx、dbf的文件头先占位，关闭时写入一次。
+ * 输出与ShapefileDataStore写入的文件逐字节一致，关闭时与ShapefileDataStore一样创建qix空间索引。
+ * 用法：
+ * <pre>
+ * try (ShpNativeWriter writer = ShpNativeWriter.open(type, shpPath, "UTF-8")) {
+ *     writer.write(geometry, name, area);
+ * }
+ * </pre>
+ * 非线程安全
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/4/14
+ */
+public class ShpNativeWriter implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ShpNativeWriter.class);
+
+    private static final int BUFFER_BYTES = 1024 * 1024;
+
+    private final File shpFile;
+
+    private final ShpRecordEncoder encoder;
+
+    private final FileChannel shpChannel;
+
+    private final FileChannel shxChannel;
+
+    private final FileChannel dbfChannel;
+
+    private final ByteBuffer shpBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+    private final ByteBuffer shxBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.BIG_ENDIAN);
+
+    private final ByteBuffer dbfBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    private int recordCount;
+
+    /**
+     * shp已写入的字节数，包括文件头
+     */
+    private long shpBytes = ShpRecordEncoder.SHP_HEADER_BYTES;
+
+    private boolean closed;
+
+    private ShpNativeWriter(File shpFile, SimpleFeatureType type, Charset charset) throws IOException {
+        this.shpFile = shpFile;
+        this.encoder = new ShpRecordEncoder(type, charset);
+
+        String name = shpFile.getName();
+        String baseName = name.substring(0, name.length() - ShpFileUtils.SHP_SUFFIX.length());
+        File dir = shpFile.getParentFile();
+        this.shpChannel = open(shpFile);
+        this.shxChannel = open(new File(dir, baseName + ".shx"));
+        this.dbfChannel = open(new File(dir, baseName + DbfUtils.DBF_SUFFIX));
+        //文件头占位，关闭时写入
+        shpChannel.position(ShpRecordEncoder.SHP_HEADER_BYTES);
+        shxChannel.position(ShpRecordEncoder.SHP_HEADER_BYTES);
+        dbfChannel.position(encoder.getDbfHeaderBytes());
+
+        byte[] prj = encoder.prjBytes();
+        if (prj != null) {
+            Files.write(new File(dir, baseName + ".prj").toPath(), prj);
+        }
+        Files.write(new File(dir, baseName + ".cpg").toPath(), encoder.cpgBytes());
+    }
+
+    /**
+     * 打开写入器，输出文件夹中已有的同名shp会被清空
+     *
+     * @param type    要素类型，地理要素之外的属性按顺序写入dbf
+     * @param shpPath shp输出路径
+     * @param charSet 属性编码
+     * @return 写入器，使用后需关闭
+     */
+    public static ShpNativeWriter open(SimpleFeatureType type, String shpPath, String charSet) {
+        return open(type, ShpFileUtils.getEmptyShpFromPath(shpPath), Charset.forName(charSet));
+    }
+
+    static ShpNativeWriter open(SimpleFeatureType type, File shpFile, Charset charset) {
+        try {
+            return new ShpNativeWriter(shpFile, type, charset);
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 写入一条记录
+     *
+     * @param geometry   地理要素，为空时写入空记录
+     * @param attributes 其他属性，按要素类型中非地理要素属性的顺序
+     */
+    public void write(Geometry geometry, Object... attributes) {
+        if (attributes.length != encoder.getFieldCount()) {
+            throw new ShpException("属性数量" + attributes.length + "与要素类型不一致，应为" + encoder.getFieldCount());
+        }
+        writeRecord(geometry, attributes, 0);
+    }
+
+    /**
+     * 写入一条记录
+     *
+     * @param values 第一个为地理要素，之后为其他属性
+     */
+    void write(Object[] values) {
+        if (values.length != encoder.getFieldCount() + 1) {
+            throw new ShpException("属性数量" + (values.length - 1) + "与要素类型不一致，应为" + encoder.getFieldCount());
+        }
+        writeRecord((Geometry) values[0], values, 1);
+    }
+
+    /**
+     * @return 已写入的记录数
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return shp已写入的字节数，包括文件头
+     */
+    long getShpBytes() {
+        return shpBytes;
+    }
+
+    /**
+     * @return dbf已写入的字节数，包括文件头
+     */
+    long getDbfBytes() {
+        return encoder.getDbfHeaderBytes() + (long) encoder.getDbfRecordBytes() * recordCount;
+    }
+
+    int getDbfRecordBytes() {
+        return encoder.getDbfRecordBytes();
+    }
+
+    /**
+     * @return 已写入的地理要素范围
+     */
+    Envelope getBounds() {
+        return encoder.getBounds();
+    }
+
+    /**
+     * 写出缓冲区并写入文件头，然后创建空间索引
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush(shpChannel, shpBuffer);
+            flush(shxChannel, shxBuffer);
+            //与GeoTools一致，不写dbf文件结束标记
+            flush(dbfChannel, dbfBuffer);
+
+            writeFully(shpChannel, encoder.shpHeader(shpBytes));
+            writeFully(shxChannel, encoder.shpHeader(ShpRecordEncoder.SHP_HEADER_BYTES + (long) ShpRecordEncoder.RECORD_HEADER_BYTES * recordCount));
+            writeFully(dbfChannel, encoder.dbfHeader(recordCount));
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        } finally {
+            closeQuietly(shpChannel);
+            closeQuietly(shxChannel);
+            closeQuietly(dbfChannel);
+        }
+        createSpatialIndex();
+        log.debug("{}写入完成，记录{}条，shp{}字节", shpFile.getName(), recordCount, shpBytes);
+    }
+
+    /**
+     * 与ShapefileDataStore写入时一样创建qix空间索引
+     */
+    private void createSpatialIndex() {
+        ShapefileDataStore store = null;
+        try {
+            store = new ShapefileDataStore(shpFile.toURI().toURL());
+            store.createSpatialIndex(true);
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        } finally {
+            if (store != null) {
+                store.dispose();
+            }
+        }
+    }
+
+    /**
+     * shp记录内容的字节数，按地理要素自身是否有Z坐标估算
+     */
+    static long shpContentBytes(Geometry geometry) {
+        return ShpRecordEncoder.contentBytes(geometry, ShpRecordEncoder.hasZ(geometry));
+    }
+
+    private void writeRecord(Geometry geometry, Object[] values, int start) {
+        encoder.accept(geometry);
+        long contentBytes = encoder.contentBytes(geometry);
+        int recordBytes = (int) (ShpRecordEncoder.RECORD_HEADER_BYTES + contentBytes);
+        try {
+            ByteBuffer buffer;
+            if (recordBytes > shpBuffer.capacity()) {
+                //单条记录超过缓冲区时先写出已缓冲的记录，该记录单独编码后写出
+                flush(shpChannel, shpBuffer);
+                buffer = ByteBuffer.allocate(recordBytes);
+            } else {
+                buffer = ensure(shpChannel, shpBuffer, recordBytes);
+            }
+            recordCount++;
+            encoder.putShape(buffer, geometry, recordCount);
+            if (buffer != shpBuffer) {
+                flush(shpChannel, buffer);
+            }
+            ShpRecordEncoder.putIndex(ensure(shxChannel, shxBuffer, ShpRecordEncoder.RECORD_HEADER_BYTES), shpBytes, contentBytes);
+            shpBytes += recordBytes;
+            encoder.putRecord(ensure(dbfChannel, dbfBuffer, encoder.getDbfRecordBytes()), values, start);
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * 缓冲区剩余空间不足时写出
+     */
+    private static ByteBuffer ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+        return buffer;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * 从文件开头写入文件头
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long position = 0;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.entity.ShpPartInfo;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分卷写入shp，当前分卷的shp或dbf再写入一条要素会超过上限时，关闭当前分卷并写入下一个分卷(名称_part1.shp、名称_part2.shp...)。
+ * 通过ShpNativeWriter直接写入文件，shp记录大小按几何类型和坐标数计算，dbf记录为定长。
+ * 分卷上限小于等于0时不分卷，直接写入名称.shp
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/4/3
+ */
+class ShpPartWriter implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ShpPartWriter.class);
+
+    /**
+     * shp和dbf文件大小的上限，略小于2GB，为shx、文件头等留出余量
+     */
+    static final long DEFAULT_MAX_PART_BYTES = 2_000_000_000L;
+
+    private static final int SHP_RECORD_HEADER_BYTES = 8;
+
+    private final File dir;
+
+    private final String baseName;
+
+    private final SimpleFeatureType type;
+
+    private final Charset charset;
+
+    private final long maxPartBytes;
+
+    /**
+     * 分卷序号，并行导出时多个写入器共用
+     */
+    private final AtomicInteger partCounter;
+
+    private final Object[] values;
+
+    private final List<ShpPartInfo> parts = new ArrayList<>();
+
+    private ShpNativeWriter nativeWriter;
+
+    private ShpPartInfo currentPart;
+
+    private Long minKey;
+
+    private Long maxKey;
+
+    /**
+     * @param dir          输出文件夹
+     * @param baseName     shp名称，不带后缀
+     * @param type         要素类型
+     * @param charset      属性编码
+     * @param maxPartBytes 每个分卷shp和dbf的字节数上限，小于等于0时不分卷
+     * @param partCounter  分卷序号
+     */
+    ShpPartWriter(File dir, String baseName, SimpleFeatureType type, Charset charset, long maxPartBytes, AtomicInteger partCounter) {
+        this.dir = dir;
+        this.baseName = baseName;
+        this.type = type;
+        this.charset = charset;
+        this.maxPartBytes = maxPartBytes;
+        this.partCounter = partCounter;
+        this.values = new Object[type.getAttributeCount()];
+    }
+
+    /**
+     * 设置按主键范围导出时的范围，记录到分卷信息中
+     */
+    void setKeyRange(Long minKey, Long maxKey) {
+        this.minKey = minKey;
+        this.maxKey = maxKey;
+    }
+
+    /**
+     * 写入要素
+     *
+     * @param feature 要素，类型需与构建时的类型一致
+     */
+    void write(SimpleFeature feature) {
+        //shp的属性顺序为地理要素在前，其他属性按原顺序
+        values[0] = feature.getDefaultGeometry();
+        int index = 1;
+        for (AttributeDescriptor descriptor : type.getAttributeDescriptors()) {
+            if (!(descriptor instanceof GeometryDescriptor)) {
+                values[index++] = feature.getAttribute(descriptor.getName());
+            }
+        }
+        write(values);
+    }
+
+    /**
+     * 写入要素
+     *
+     * @param featureValues 第一个为地理要素，之后为其他属性
+     */
+    void write(Object[] featureValues) {
+        long recordBytes = SHP_RECORD_HEADER_BYTES + ShpNativeWriter.shpContentBytes((Geometry) featureValues[0]);
+        if (nativeWriter == null) {
+            openPart();
+        } else if (maxPartBytes > 0 && nativeWriter.getRecordCount() > 0
+                && (nativeWriter.getShpBytes() + recordBytes > maxPartBytes
+                || nativeWriter.getDbfBytes() + nativeWriter.getDbfRecordBytes() > maxPartBytes)) {
+            closePart();
+            openPart();
+        }
+        nativeWriter.write(featureValues);
+    }
+
+    /**
+     * @return 已写入的分卷信息，关闭后完整
+     */
+    List<ShpPartInfo> getParts() {
+        return parts;
+    }
+
+    @Override
+    public void close() {
+        closePart();
+    }
+
+    private void openPart() {
+        int partNumber = maxPartBytes > 0 ? partCounter.incrementAndGet() : 1;
+        String name = maxPartBytes > 0 ? baseName + "_part" + partNumber : baseName;
+        File shpFile = new File(dir, name + ShpFileUtils.SHP_SUFFIX);
+        nativeWriter = ShpNativeWriter.open(type, shpFile, charset);
+
+        currentPart = new ShpPartInfo();
+        currentPart.setShpPath(shpFile.getAbsolutePath());
+        currentPart.setPartNumber(partNumber);
+        currentPart.setMinKey(minKey);
+        currentPart.setMaxKey(maxKey);
+        parts.add(currentPart);
+    }
+
+    private void closePart() {
+        if (nativeWriter == null) {
+            return;
+        }
+        try {
+            nativeWriter.close();
+        } finally {
+            currentPart.setFeatures(nativeWriter.getRecordCount());
+            currentPart.setShpBytes(nativeWriter.getShpBytes());
+            currentPart.setDbfBytes(nativeWriter.getDbfBytes());
+            Envelope envelope = nativeWriter.getBounds();
+            if (!envelope.isNull()) {
+                currentPart.setBbox(new double[]{envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY()});
+            }
+            nativeWriter = null;
+        }
+        log.debug("分卷{}写入完成，要素{}条，shp{}字节，dbf{}字节", currentPart.getShpPath(), currentPart.getFeatures(),
+                currentPart.getShpBytes(), currentPart.getDbfBytes());
+    }
+}
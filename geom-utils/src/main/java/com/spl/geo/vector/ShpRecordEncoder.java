@@ -0,0 +1,621 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.dbf.DbaseFileReader;
+import org.geotools.data.shapefile.shp.JTSUtilities;
+import org.geotools.data.shapefile.shp.ShapeHandler;
+import org.geotools.data.shapefile.shp.ShapeType;
+import org.geotools.data.shapefile.shp.ShapefileException;
+import org.geotools.data.shapefile.shp.ShapefileHeader;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.FieldPosition;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * shp、dbf记录和文件头的二进制编码，编码到调用方提供的缓冲区，不关心输出目标，
+ * 由ShpNativeWriter写入文件、ShpZipWriter写入zip。输出与ShapefileDataStore写入的文件逐字节一致：
+ * <ul>
+ *     <li>dbf字段定义、prj和cpg取自ShapefileDataStore.createSchema在临时目录生成的模板，dbf文件头由GeoTools写出</li>
+ *     <li>shp记录由GeoTools的ShapeHandler编码，shp、shx文件头由ShapefileHeader写出，与ShapefileFeatureWriter一样
+ *     按第一个非空地理要素确定图层类型和是否有Z坐标</li>
+ *     <li>dbf记录按DbaseFileWriter的格式直接编码到缓冲区，不生成中间字符串：字符串左对齐、数值右对齐，空值为空格，
+ *     逻辑值空值为?，日期为yyyyMMdd，不写文件结束标记</li>
+ * </ul>
+ * 与GeoTools的差异：字段名按属性编码在字符边界截断为10字节，截断后重名时加序号；超长的多字节字符串在字符边界截断；
+ * NaN和无穷大写为空值；空点写为空记录。非线程安全
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/4/14
+ */
+class ShpRecordEncoder {
+
+    static final int NULL_SHAPE = 0;
+    private static final int POINT = 1;
+    private static final int POLYLINE = 3;
+    private static final int POLYGON = 5;
+    private static final int MULTI_POINT = 8;
+
+    static final int SHP_HEADER_BYTES = 100;
+    static final int RECORD_HEADER_BYTES = 8;
+
+    private static final int DBF_FIELD_BYTES = 32;
+    private static final int DBF_NAME_BYTES = 10;
+    private static final int MAX_FIELD_LENGTH = 255;
+
+    private final Charset charset;
+
+    private final CharsetEncoder encoder;
+
+    /**
+     * 字符串编码的中间缓冲区，不超过字段最大长度
+     */
+    private final ByteBuffer stringBuffer = ByteBuffer.allocate(MAX_FIELD_LENGTH);
+
+    private final byte[] digits = new byte[20];
+
+    private final StringBuffer numberText = new StringBuffer(64);
+
+    private final FieldPosition fieldPosition = new FieldPosition(0);
+
+    /**
+     * 与DbaseFileWriter一致，按US格式、不分组
+     */
+    private final DecimalFormat decimalFormat = new DecimalFormat("0", DecimalFormatSymbols.getInstance(Locale.US));
+
+    /**
+     * 与DbaseFileWriter一致使用公历，不受默认区域的日历影响
+     */
+    private final Calendar calendar = Calendar.getInstance(Locale.US);
+
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+
+    /**
+     * createSchema生成的dbf文件头，写出时更新记录数
+     */
+    private final DbaseFileHeader dbfTemplate;
+
+    private final char[] fieldTypes;
+
+    private final int[] fieldLengths;
+
+    private final int[] fieldDecimals;
+
+    /**
+     * 按属性编码的字段名，不超过10字节
+     */
+    private final byte[][] fieldNames;
+
+    private final byte[] prj;
+
+    private final byte[] cpg;
+
+    private final Envelope bounds = new Envelope();
+
+    /**
+     * 要素类型对应的图层类型，没有地理要素时写入文件头
+     */
+    private final ShapeType schemaShapeType;
+
+    /**
+     * 按第一个非空地理要素确定的图层类型，为空时尚未确定
+     */
+    private ShapeType shapeType;
+
+    private ShapeHandler shapeHandler;
+
+    /**
+     * 最近一次转换的地理要素，计算长度和编码时只转换一次
+     */
+    private Geometry lastGeometry;
+
+    private Geometry lastConverted;
+
+    /**
+     * @param type    要素类型，地理要素之外的属性按顺序编码到dbf
+     * @param charset 属性编码
+     */
+    ShpRecordEncoder(SimpleFeatureType type, Charset charset) {
+        this.charset = charset;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.decimalFormat.setGroupingUsed(false);
+        GeometryDescriptor geometryDescriptor = type.getGeometryDescriptor();
+        this.schemaShapeType = geometryDescriptor == null ? ShapeType.NULL
+                : JTSUtilities.findBestGeometryType(geometryDescriptor.getType().getBinding());
+
+        Path templateDir = null;
+        DbaseFileHeader templateHeader;
+        byte[] templatePrj;
+        byte[] templateCpg;
+        try {
+            templateDir = Files.createTempDirectory("shp-template");
+            File templateShp = new File(templateDir.toFile(), "template" + ShpFileUtils.SHP_SUFFIX);
+            ShapefileDataStore store = new ShapefileDataStore(templateShp.toURI().toURL());
+            try {
+                store.setCharset(charset);
+                store.createSchema(type);
+            } finally {
+                store.dispose();
+            }
+            DbaseFileReader dbfReader = new DbaseFileReader(FileChannel.open(new File(templateDir.toFile(), "template" + DbfUtils.DBF_SUFFIX).toPath(),
+                    StandardOpenOption.READ), false, charset);
+            try {
+                templateHeader = dbfReader.getHeader();
+            } finally {
+                dbfReader.close();
+            }
+            templatePrj = readIfExists(new File(templateDir.toFile(), "template.prj"));
+            templateCpg = readIfExists(new File(templateDir.toFile(), "template.cpg"));
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        } finally {
+            deleteQuietly(templateDir);
+        }
+        this.dbfTemplate = templateHeader;
+        this.prj = templatePrj;
+        this.cpg = templateCpg != null ? templateCpg : charset.name().getBytes(StandardCharsets.US_ASCII);
+
+        List<AttributeDescriptor> descriptors = new ArrayList<>();
+        for (AttributeDescriptor descriptor : type.getAttributeDescriptors()) {
+            if (!(descriptor instanceof GeometryDescriptor)) {
+                descriptors.add(descriptor);
+            }
+        }
+        int fieldCount = dbfTemplate.getNumFields();
+        if (fieldCount != descriptors.size()) {
+            throw new ShpException("dbf字段数" + fieldCount + "与要素类型的属性数" + descriptors.size() + "不一致");
+        }
+        fieldTypes = new char[fieldCount];
+        fieldLengths = new int[fieldCount];
+        fieldDecimals = new int[fieldCount];
+        fieldNames = new byte[fieldCount][];
+        Set<String> usedNames = new HashSet<>();
+        for (int i = 0; i < fieldCount; i++) {
+            fieldTypes[i] = Character.toUpperCase(dbfTemplate.getFieldType(i));
+            fieldLengths[i] = dbfTemplate.getFieldLength(i);
+            fieldDecimals[i] = dbfTemplate.getFieldDecimalCount(i);
+            if ("CNFDL".indexOf(fieldTypes[i]) < 0) {
+                throw new ShpException("不支持的dbf字段类型" + fieldTypes[i] + "：" + descriptors.get(i).getLocalName());
+            }
+            fieldNames[i] = uniqueName(descriptors.get(i).getLocalName(), usedNames).getBytes(charset);
+        }
+    }
+
+    int getFieldCount() {
+        return fieldTypes.length;
+    }
+
+    int getDbfHeaderBytes() {
+        return dbfTemplate.getHeaderLength();
+    }
+
+    int getDbfRecordBytes() {
+        return dbfTemplate.getRecordLength();
+    }
+
+    /**
+     * @return 已编码的地理要素范围
+     */
+    Envelope getBounds() {
+        return bounds;
+    }
+
+    /**
+     * 按图层类型计算shp记录内容的字节数(包括4字节的类型)，调用前需通过accept检查
+     */
+    long contentBytes(Geometry geometry) {
+        if (isNullShape(geometry)) {
+            return 4;
+        }
+        return shapeHandler.getLength(convert(geometry));
+    }
+
+    /**
+     * 按地理要素自身估算shp记录内容的字节数，与ShapeHandler的计算一致：点20，多点40+16n，线和面44+4*部分数+16*坐标数，空值4。
+     * 有Z坐标时同时写入Z和M，点为36，其他类型增加Z、M的范围和坐标32+16n
+     */
+    static long contentBytes(Geometry geometry, boolean z) {
+        if (isNullShape(geometry)) {
+            return 4;
+        }
+        if (geometry instanceof Point) {
+            return z ? 36 : 20;
+        }
+        long zBytes = z ? 32 + 16L * geometry.getNumPoints() : 0;
+        if (geometry instanceof MultiPoint) {
+            return 40 + 16L * geometry.getNumPoints() + zBytes;
+        }
+        return 44 + 4L * partCount(geometry) + 16L * geometry.getNumPoints() + zBytes;
+    }
+
+    /**
+     * 与GeoTools判断坐标维度的方式一致，任一坐标有Z值即视为有Z坐标
+     */
+    static boolean hasZ(Geometry geometry) {
+        return geometry != null && JTSUtilities.guessCoorinateDims(geometry.getCoordinates()) > 2;
+    }
+
+    /**
+     * 检查地理要素类型与图层一致，并累计范围。与ShapefileFeatureWriter一致，按第一个非空地理要素的类型和坐标维度确定图层类型
+     */
+    void accept(Geometry geometry) {
+        if (geometry == null) {
+            return;
+        }
+        if (shapeType == null) {
+            try {
+                shapeType = JTSUtilities.getShapeType(geometry, JTSUtilities.guessCoorinateDims(geometry.getCoordinates()));
+                shapeHandler = shapeType.getShapeHandler(geometryFactory);
+            } catch (ShapefileException e) {
+                throw new ShpException(e.getMessage(), e);
+            }
+        }
+        int family = shapeFamily(geometry.getClass());
+        int layerFamily = shapeFamily(shapeType);
+        //点可以写入多点图层，由convertToCollection转换
+        if (family != layerFamily && !(family == POINT && layerFamily == MULTI_POINT)) {
+            throw new ShpException("shp只能有一种地理要素类型，" + geometry.getGeometryType() + "与图层类型" + shapeType + "不一致");
+        }
+        Envelope envelope = geometry.getEnvelopeInternal();
+        if (!envelope.isNull()) {
+            bounds.expandToInclude(envelope);
+        }
+    }
+
+    /**
+     * 编码shp记录头和内容，调用前需通过accept检查
+     *
+     * @param buffer       剩余空间不小于记录头加contentBytes
+     * @param geometry     地理要素
+     * @param recordNumber 记录号，从1开始
+     */
+    void putShape(ByteBuffer buffer, Geometry geometry, int recordNumber) {
+        //记录头为大端，内容为小端
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(recordNumber);
+        buffer.putInt((int) (contentBytes(geometry) / 2));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (isNullShape(geometry)) {
+            buffer.putInt(NULL_SHAPE);
+            return;
+        }
+        buffer.putInt(shapeType.id);
+        shapeHandler.write(buffer, convert(geometry));
+    }
+
+    /**
+     * 编码shx记录
+     *
+     * @param buffer       缓冲区，大端
+     * @param offsetBytes  shp记录在文件中的位置
+     * @param contentBytes shp记录内容的字节数
+     */
+    static void putIndex(ByteBuffer buffer, long offsetBytes, long contentBytes) {
+        buffer.putInt((int) (offsetBytes / 2));
+        buffer.putInt((int) (contentBytes / 2));
+    }
+
+    /**
+     * 编码dbf记录
+     *
+     * @param buffer 剩余空间不小于dbf记录长度
+     * @param values 属性值
+     * @param start  第一个属性在values中的下标
+     */
+    void putRecord(ByteBuffer buffer, Object[] values, int start) {
+        //删除标记
+        buffer.put((byte) ' ');
+        for (int i = 0; i < fieldTypes.length; i++) {
+            Object value = values[start + i];
+            int length = fieldLengths[i];
+            switch (fieldTypes[i]) {
+                case 'C':
+                    putString(buffer, value == null ? null : value.toString(), length);
+                    break;
+                case 'N':
+                case 'F':
+                    putNumber(buffer, (Number) value, length, fieldDecimals[i]);
+                    break;
+                case 'D':
+                    putDate(buffer, value instanceof Calendar ? ((Calendar) value).getTime() : (Date) value);
+                    break;
+                default:
+                    buffer.put(value == null ? (byte) '?' : (Boolean.TRUE.equals(value) ? (byte) 'T' : (byte) 'F'));
+            }
+        }
+    }
+
+    /**
+     * shp、shx文件头，由GeoTools的ShapefileHeader写出，Z、M范围为0
+     *
+     * @param fileBytes 文件总字节数
+     * @return 可直接写出的缓冲区
+     */
+    ByteBuffer shpHeader(long fileBytes) {
+        if (fileBytes / 2 > Integer.MAX_VALUE) {
+            throw new ShpException("shp文件超过上限");
+        }
+        ByteBuffer header = ByteBuffer.allocate(SHP_HEADER_BYTES);
+        try {
+            new ShapefileHeader().write(header, shapeType != null ? shapeType : schemaShapeType, 0, (int) (fileBytes / 2),
+                    bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+        header.flip();
+        return header;
+    }
+
+    /**
+     * dbf文件头，由GeoTools的DbaseFileHeader写出后替换为按属性编码的字段名
+     *
+     * @param recordCount 记录数
+     * @return 可直接写出的缓冲区
+     */
+    ByteBuffer dbfHeader(int recordCount) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(dbfTemplate.getHeaderLength());
+        try {
+            dbfTemplate.setNumRecords(recordCount);
+            dbfTemplate.writeHeader(Channels.newChannel(out));
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+        ByteBuffer header = ByteBuffer.wrap(out.toByteArray());
+        for (int i = 0; i < fieldNames.length; i++) {
+            //字段名11字节，不足补0
+            header.position(DBF_FIELD_BYTES + DBF_FIELD_BYTES * i);
+            header.put(fieldNames[i]);
+            for (int j = fieldNames[i].length; j <= DBF_NAME_BYTES; j++) {
+                header.put((byte) 0);
+            }
+        }
+        header.position(0);
+        return header;
+    }
+
+    /**
+     * @return createSchema生成的prj内容，没有坐标系时返回null
+     */
+    byte[] prjBytes() {
+        return prj;
+    }
+
+    /**
+     * @return cpg内容，createSchema未生成时为编码名称
+     */
+    byte[] cpgBytes() {
+        return cpg;
+    }
+
+    /**
+     * 与ShapefileFeatureWriter一致，按图层类型转换为多点、多线、多面
+     */
+    private Geometry convert(Geometry geometry) {
+        if (geometry != lastGeometry) {
+            lastGeometry = geometry;
+            lastConverted = JTSUtilities.convertToCollection(geometry, shapeType);
+        }
+        return lastConverted;
+    }
+
+    /**
+     * 空值写入空记录；ShapeHandler无法编码空点，也写入空记录
+     */
+    private static boolean isNullShape(Geometry geometry) {
+        return geometry == null || (geometry instanceof Point && geometry.isEmpty());
+    }
+
+    private void putString(ByteBuffer buffer, String value, int length) {
+        if (value == null) {
+            putSpaces(buffer, length);
+            return;
+        }
+        //编码器在缓冲区不足时只写入完整的字符，超出字段长度的部分截断
+        stringBuffer.clear();
+        stringBuffer.limit(length);
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(value), stringBuffer, true);
+        stringBuffer.flip();
+        int written = stringBuffer.remaining();
+        buffer.put(stringBuffer);
+        putSpaces(buffer, length - written);
+    }
+
+    /**
+     * 与DbaseFileWriter一致，按字段的小数位格式化后右对齐，超出字段长度时截取左侧部分
+     */
+    private void putNumber(ByteBuffer buffer, Number value, int length, int decimals) {
+        if (value == null || !isFinite(value)) {
+            putSpaces(buffer, length);
+            return;
+        }
+        if (decimals == 0 && (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)) {
+            putLong(buffer, value.longValue(), length);
+            return;
+        }
+        numberText.setLength(0);
+        decimalFormat.setMaximumFractionDigits(decimals);
+        decimalFormat.setMinimumFractionDigits(decimals);
+        decimalFormat.format(value, numberText, fieldPosition);
+        putText(buffer, numberText, length);
+    }
+
+    private static boolean isFinite(Number value) {
+        return !(value instanceof Double || value instanceof Float) || Double.isFinite(value.doubleValue());
+    }
+
+    /**
+     * 整数右对齐写入，不生成字符串
+     */
+    private void putLong(ByteBuffer buffer, long value, int length) {
+        boolean negative = value < 0;
+        int count = 0;
+        if (value == 0) {
+            digits[count++] = '0';
+        }
+        while (value != 0) {
+            digits[count++] = (byte) ('0' + Math.abs(value % 10));
+            value /= 10;
+        }
+        int textLength = count + (negative ? 1 : 0);
+        putSpaces(buffer, length - textLength);
+        int remaining = length;
+        if (negative && remaining > 0) {
+            buffer.put((byte) '-');
+            remaining--;
+        }
+        //超出字段长度时截取左侧部分
+        for (int i = count - 1; i >= 0 && remaining > 0; i--, remaining--) {
+            buffer.put(digits[i]);
+        }
+    }
+
+    private static void putText(ByteBuffer buffer, CharSequence text, int length) {
+        int textLength = Math.min(text.length(), length);
+        putSpaces(buffer, length - textLength);
+        for (int i = 0; i < textLength; i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    private void putDate(ByteBuffer buffer, Date value) {
+        if (value == null) {
+            putSpaces(buffer, 8);
+            return;
+        }
+        calendar.setTime(value);
+        int date = calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100 + calendar.get(Calendar.DAY_OF_MONTH);
+        for (int divisor = 10000000; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + date / divisor % 10));
+        }
+    }
+
+    private static void putSpaces(ByteBuffer buffer, int count) {
+        for (int i = 0; i < count; i++) {
+            buffer.put((byte) ' ');
+        }
+    }
+
+    /**
+     * dbf字段名最长10个字节，按属性编码在字符边界截断，截断后重名时末尾加序号
+     */
+    private String uniqueName(String name, Set<String> usedNames) {
+        String candidate = truncate(name, DBF_NAME_BYTES);
+        int suffix = 1;
+        while (!usedNames.add(candidate.toUpperCase(Locale.ROOT))) {
+            String number = String.valueOf(suffix++);
+            candidate = truncate(name, DBF_NAME_BYTES - number.length()) + number;
+        }
+        return candidate;
+    }
+
+    /**
+     * 按属性编码截断为不超过指定字节数的完整字符
+     */
+    private String truncate(String name, int maxBytes) {
+        ByteBuffer bytes = ByteBuffer.allocate(maxBytes);
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(name), bytes, true);
+        return new String(bytes.array(), 0, bytes.position(), charset);
+    }
+
+    private static byte[] readIfExists(File file) throws IOException {
+        return file.exists() ? Files.readAllBytes(file.toPath()) : null;
+    }
+
+    private static void deleteQuietly(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        File[] files = dir.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    private static int shapeFamily(ShapeType type) {
+        if (type.isPointType()) {
+            return POINT;
+        }
+        if (type.isMultiPointType()) {
+            return MULTI_POINT;
+        }
+        if (type.isLineType()) {
+            return POLYLINE;
+        }
+        return type.isPolygonType() ? POLYGON : NULL_SHAPE;
+    }
+
+    private static int shapeFamily(Class<?> binding) {
+        if (Point.class.isAssignableFrom(binding)) {
+            return POINT;
+        }
+        if (MultiPoint.class.isAssignableFrom(binding)) {
+            return MULTI_POINT;
+        }
+        if (LineString.class.isAssignableFrom(binding) || MultiLineString.class.isAssignableFrom(binding)) {
+            return POLYLINE;
+        }
+        if (Polygon.class.isAssignableFrom(binding) || MultiPolygon.class.isAssignableFrom(binding)) {
+            return POLYGON;
+        }
+        return NULL_SHAPE;
+    }
+
+    private static int partCount(Geometry geometry) {
+        if (geometry instanceof Polygon) {
+            return geometry.isEmpty() ? 0 : ((Polygon) geometry).getNumInteriorRing() + 1;
+        }
+        if (geometry instanceof GeometryCollection) {
+            int count = 0;
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                count += partCount(geometry.getGeometryN(i));
+            }
+            return count;
+        }
+        return geometry.isEmpty() ? 0 : 1;
+    }
+}
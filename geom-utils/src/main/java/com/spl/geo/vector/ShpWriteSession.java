@@ -0,0 +1,258 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.Transaction;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.ShapefileDataStoreFactory;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 逐个写入要素的shp写入会话，通过自动提交的追加FeatureWriter直接写入文件，内存占用与要素数量无关，关闭会话时创建空间索引。
+ * 写入过程中磁盘上的文件不完整，会话不会定时或按数量自动刷新，需要中途可读时手动调用flush，
+ * flush会复制已写入的全部记录，代价与已写入的数量成正比，按固定间隔调用时总代价为O(N²)。
+ * 写入失败或调用abort后，关闭会话时不创建空间索引，并删除不完整的输出文件。
+ * 用法：
+ * <pre>
+ * try (ShpWriteSession session = ShpWriteSession.open(type, shpPath, "UTF-8")) {
+ *     try {
+ *         for (...) {
+ *             session.write(feature);
+ *         }
+ *     } catch (RuntimeException e) {
+ *         session.abort();
+ *         throw e;
+ *     }
+ * }
+ * </pre>
+ * 非线程安全
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/4/12
+ */
+public class ShpWriteSession implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ShpWriteSession.class);
+
+    private final File shpFile;
+
+    private final SimpleFeatureType type;
+
+    private final ShapefileDataStore dataStore;
+
+    private final String typeName;
+
+    /**
+     * shp的属性顺序为地理要素在前，其他属性按原顺序，逐个要素复用
+     */
+    private final Object[] values;
+
+    private FeatureWriter<SimpleFeatureType, SimpleFeature> featureWriter;
+
+    private long count;
+
+    private boolean closed;
+
+    /**
+     * 写入失败或被中止，关闭时删除输出
+     */
+    private boolean failed;
+
+    private ShpWriteSession(File shpFile, SimpleFeatureType type, ShapefileDataStore dataStore) throws IOException {
+        this.shpFile = shpFile;
+        this.type = type;
+        this.dataStore = dataStore;
+        this.typeName = dataStore.getTypeNames()[0];
+        this.values = new Object[type.getAttributeCount()];
+        this.featureWriter = dataStore.getFeatureWriterAppend(typeName, Transaction.AUTO_COMMIT);
+    }
+
+    /**
+     * 打开写入会话，输出文件夹中已有的同名shp会被清空
+     *
+     * @param type    要素类型
+     * @param shpPath shp输出路径
+     * @param charSet 属性编码
+     * @return 写入会话，使用后需关闭
+     */
+    public static ShpWriteSession open(SimpleFeatureType type, String shpPath, String charSet) {
+        File shpFile = ShpFileUtils.getEmptyShpFromPath(shpPath);
+        ShapefileDataStore dataStore = null;
+        try {
+            Map<String, Serializable> params = new HashMap<>(2);
+            params.put("url", shpFile.toURI().toURL());
+            params.put("create spatial index", Boolean.TRUE);
+            dataStore = (ShapefileDataStore) new ShapefileDataStoreFactory().createNewDataStore(params);
+            dataStore.createSchema(type);
+            dataStore.setCharset(Charset.forName(charSet));
+            return new ShpWriteSession(shpFile, type, dataStore);
+        } catch (IOException | RuntimeException e) {
+            if (dataStore != null) {
+                dataStore.dispose();
+            }
+            throw e instanceof ShpException ? (ShpException) e : new ShpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 写入要素
+     *
+     * @param feature 要素，类型需与打开会话时的类型一致
+     */
+    public void write(SimpleFeature feature) {
+        values[0] = feature.getDefaultGeometry();
+        int index = 1;
+        for (AttributeDescriptor descriptor : type.getAttributeDescriptors()) {
+            if (!(descriptor instanceof GeometryDescriptor)) {
+                values[index++] = feature.getAttribute(descriptor.getName());
+            }
+        }
+        writeValues();
+    }
+
+    /**
+     * 写入要素
+     *
+     * @param geometry   地理要素
+     * @param attributes 其他属性，按要素类型中非地理要素属性的顺序
+     */
+    public void write(Geometry geometry, Object... attributes) {
+        if (attributes.length != values.length - 1) {
+            throw new ShpException("属性数量" + attributes.length + "与要素类型不一致，应为" + (values.length - 1));
+        }
+        values[0] = geometry;
+        System.arraycopy(attributes, 0, values, 1, attributes.length);
+        writeValues();
+    }
+
+    /**
+     * 关闭当前写入器使已写入的要素完整落盘，之后的要素继续追加。
+     * GeoTools的追加写入器关闭时会将已有记录复制到临时文件再复制回来，每次调用的代价与已写入的要素数量成正比，
+     * 不宜频繁调用，批量写入时只在关闭会话时落盘
+     */
+    public void flush() {
+        checkOpen();
+        try {
+            featureWriter.close();
+            featureWriter = dataStore.getFeatureWriterAppend(typeName, Transaction.AUTO_COMMIT);
+        } catch (IOException e) {
+            failed = true;
+            throw new ShpException(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        log.debug("{}已刷新，要素{}条", shpFile.getName(), count);
+    }
+
+    /**
+     * @return 已写入的要素数量
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * 中止写入，调用方处理要素出错时调用，之后关闭会话会删除已写入的文件
+     */
+    public void abort() {
+        failed = true;
+    }
+
+    /**
+     * 关闭写入器并创建空间索引，写入失败时删除不完整的输出
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (failed) {
+            discard();
+            return;
+        }
+        try {
+            featureWriter.close();
+            featureWriter = null;
+        } catch (IOException | RuntimeException e) {
+            //写入器关闭失败时文件不完整
+            discard();
+            throw e instanceof ShpException ? (ShpException) e : new ShpException(e.getMessage(), e);
+        }
+        try {
+            dataStore.createSpatialIndex(true);
+            log.info("{}写入完成，要素{}条", shpFile.getAbsolutePath(), count);
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        } finally {
+            dataStore.dispose();
+        }
+    }
+
+    private void writeValues() {
+        checkOpen();
+        try {
+            SimpleFeature feature = featureWriter.next();
+            for (int i = 0; i < values.length; i++) {
+                feature.setAttribute(i, values[i]);
+            }
+            featureWriter.write();
+        } catch (IOException e) {
+            failed = true;
+            throw new ShpException(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            failed = true;
+            throw e;
+        }
+        count++;
+    }
+
+    /**
+     * 关闭写入器并删除同名的shp、shx、dbf、prj、cpg等文件，不创建空间索引
+     */
+    private void discard() {
+        FeatureWriter<SimpleFeatureType, SimpleFeature> writer = featureWriter;
+        featureWriter = null;
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("{}写入失败后关闭写入器出错：{}", shpFile.getName(), e.getMessage());
+        } finally {
+            dataStore.dispose();
+        }
+        String name = shpFile.getName();
+        String prefix = name.substring(0, name.length() - ShpFileUtils.SHP_SUFFIX.length()) + ".";
+        File[] files = shpFile.getParentFile().listFiles((dir, fileName) -> fileName.startsWith(prefix));
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    log.warn("不完整的输出文件{}删除失败", file.getAbsolutePath());
+                }
+            }
+        }
+        log.warn("{}写入失败，已写入{}条，不完整的输出已删除", shpFile.getAbsolutePath(), count);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new ShpException("shp写入会话已关闭");
+        }
+    }
+}
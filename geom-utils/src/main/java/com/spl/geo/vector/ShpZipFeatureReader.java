@@ -0,0 +1,429 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import org.apache.commons.lang3.StringUtils;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.dbf.DbaseFileReader;
+import org.geotools.data.shapefile.shp.ShapeHandler;
+import org.geotools.data.shapefile.shp.ShapeType;
+import org.geotools.data.shapefile.shp.ShapefileHeader;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.CRS;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 不解压直接从zip中顺序读取shp要素，shp和dbf条目通过ZipFile的输入流逐条解码，关闭时释放zip文件。
+ * 附属文件按名称不区分大小写匹配，属性编码取cpg，没有时与DbfUtils.detectCharset一样抽样dbf判断，无法判断时按GBK，坐标系取prj。
+ * 可通过seek按shx定位到指定要素，仅存储（STORED）的条目由ZipFile直接跳到偏移处，压缩条目需要解压跳过；
+ * 不使用空间索引，要素的属性顺序与ShapefileDataStore的schema一致
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/4/17
+ */
+class ShpZipFeatureReader implements SimpleFeatureIterator {
+
+    private static final Logger log = LoggerFactory.getLogger(ShpZipFeatureReader.class);
+
+    private static final String GEOM_FIELD = "the_geom";
+
+    private static final Charset GBK = Charset.forName("GBK");
+
+    private final ZipFile zipFile;
+
+    private final ZipEntry shpEntry;
+
+    private final ZipEntry shxEntry;
+
+    private final ZipEntry dbfEntry;
+
+    private final Charset charset;
+
+    private final int recordCount;
+
+    private ReadableByteChannel shpChannel;
+
+    private DbaseFileReader dbfReader;
+
+    private final ShapeHandler shapeHandler;
+
+    private final SimpleFeatureType schema;
+
+    private final SimpleFeatureBuilder builder;
+
+    /**
+     * shp记录头，大端
+     */
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+
+    /**
+     * shp记录内容，小端，按最大记录扩容
+     */
+    private ByteBuffer recordContent = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * 是否已读取下一条记录的记录头
+     */
+    private boolean headerLoaded;
+
+    private int index;
+
+    ShpZipFeatureReader(File file) {
+        ZipFile zip = null;
+        ReadableByteChannel shp = null;
+        DbaseFileReader dbf = null;
+        ZipEntry shpEntry = null;
+        ZipEntry shxEntry;
+        ZipEntry dbfEntry;
+        Charset charset;
+        try {
+            zip = new ZipFile(file);
+            //按小写名称索引，附属文件与shp的大小写可能不一致
+            Map<String, ZipEntry> entries = new HashMap<>();
+            Enumeration<? extends ZipEntry> enumeration = zip.entries();
+            while (enumeration.hasMoreElements()) {
+                ZipEntry entry = enumeration.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String lowerName = entry.getName().toLowerCase(Locale.ROOT);
+                entries.put(lowerName, entry);
+                if (shpEntry == null && lowerName.endsWith(ShpFileUtils.SHP_SUFFIX)) {
+                    shpEntry = entry;
+                }
+            }
+            if (shpEntry == null) {
+                throw new ShpException("zip中不存在shp：" + file.getAbsolutePath());
+            }
+            String entryName = shpEntry.getName();
+            String baseName = entryName.substring(0, entryName.length() - ShpFileUtils.SHP_SUFFIX.length());
+            String lowerBaseName = baseName.toLowerCase(Locale.ROOT);
+            dbfEntry = entries.get(lowerBaseName + DbfUtils.DBF_SUFFIX);
+            if (dbfEntry == null) {
+                throw new ShpException("zip中缺少dbf文件：" + baseName);
+            }
+            shxEntry = entries.get(lowerBaseName + ".shx");
+            String charsetName = readText(zip, entries.get(lowerBaseName + ".cpg"));
+            charset = StringUtils.isNotEmpty(charsetName) && Charset.isSupported(charsetName)
+                    ? Charset.forName(charsetName) : detectCharset(zip, dbfEntry);
+
+            shp = Channels.newChannel(zip.getInputStream(shpEntry));
+            ByteBuffer header = ByteBuffer.allocate(ShpRecordEncoder.SHP_HEADER_BYTES);
+            if (readFully(shp, header) < header.capacity()) {
+                throw new ShpException("shp文件头不完整：" + entryName);
+            }
+            header.flip();
+            ShapefileHeader shpHeader = new ShapefileHeader();
+            shpHeader.read(header, false);
+            ShapeType shapeType = shpHeader.getShapeType();
+            dbf = new DbaseFileReader(Channels.newChannel(zip.getInputStream(dbfEntry)), false, charset);
+
+            int slash = baseName.lastIndexOf('/');
+            String typeName = slash >= 0 ? baseName.substring(slash + 1) : baseName;
+            this.schema = buildSchema(typeName, shapeType, dbf.getHeader(), readText(zip, entries.get(lowerBaseName + ".prj")));
+            this.shapeHandler = shapeType.getShapeHandler(new GeometryFactory());
+            log.debug("读取zip中的shp：{}!/{}，编码{}", file.getAbsolutePath(), entryName, charset);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(shp, dbf, zip);
+            throw e instanceof ShpException ? (ShpException) e : new ShpException(e.getMessage(), e);
+        }
+        this.zipFile = zip;
+        this.shpEntry = shpEntry;
+        this.shxEntry = shxEntry;
+        this.dbfEntry = dbfEntry;
+        this.charset = charset;
+        this.recordCount = dbf.getHeader().getNumRecords();
+        this.shpChannel = shp;
+        this.dbfReader = dbf;
+        this.builder = new SimpleFeatureBuilder(schema);
+    }
+
+    SimpleFeatureType getSchema() {
+        return schema;
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return dbf文件头中的记录数
+     */
+    int getCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return shp与dbf条目解压后的字节数
+     */
+    long getLayerBytes() {
+        return shpEntry.getSize() + dbfEntry.getSize();
+    }
+
+    /**
+     * 读取dbf的字段定义，与DbfUtils.parseDbfField一致
+     */
+    Map<String, DbfFieldDef> parseDbfField() {
+        try (InputStream in = zipFile.getInputStream(dbfEntry)) {
+            return DbfUtils.parseDbfField(in);
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 通过shx定位到指定序号的要素，重新打开shp和dbf条目并跳到对应偏移
+     *
+     * @param featureIndex 要素序号，从0开始
+     */
+    void seek(long featureIndex) {
+        if (featureIndex >= recordCount) {
+            index = recordCount;
+            return;
+        }
+        if (shxEntry == null) {
+            throw new ShpException("zip中缺少shx文件，无法定位要素：" + shpEntry.getName());
+        }
+        ReadableByteChannel shp = null;
+        DbaseFileReader dbf = null;
+        try {
+            //shx每条索引8字节，前4字节为记录在shp中的偏移，以16位字为单位
+            long shpOffset;
+            try (DataInputStream shx = new DataInputStream(openAt(shxEntry, ShpRecordEncoder.SHP_HEADER_BYTES + 8 * featureIndex))) {
+                shpOffset = (shx.readInt() & 0xFFFFFFFFL) * 2;
+            }
+            DbaseFileHeader dbfHeader = dbfReader.getHeader();
+            int headerLength = dbfHeader.getHeaderLength();
+            byte[] headerBytes = new byte[headerLength];
+            try (DataInputStream in = new DataInputStream(zipFile.getInputStream(dbfEntry))) {
+                in.readFully(headerBytes);
+            }
+            shp = Channels.newChannel(openAt(shpEntry, shpOffset));
+            //dbf读取器需要从文件头开始读，文件头之后接到目标记录
+            InputStream records = openAt(dbfEntry, headerLength + (long) dbfHeader.getRecordLength() * featureIndex);
+            dbf = new DbaseFileReader(Channels.newChannel(new SequenceInputStream(new ByteArrayInputStream(headerBytes), records)),
+                    false, charset);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(shp, dbf, null);
+            throw e instanceof ShpException ? (ShpException) e : new ShpException(e.getMessage(), e);
+        }
+        closeQuietly(shpChannel, dbfReader, null);
+        shpChannel = shp;
+        dbfReader = dbf;
+        index = (int) featureIndex;
+        headerLoaded = false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (index >= recordCount) {
+            return false;
+        }
+        try {
+            if (!headerLoaded) {
+                recordHeader.clear();
+                int read = readFully(shpChannel, recordHeader);
+                if (read == 0) {
+                    return false;
+                }
+                if (read < recordHeader.capacity()) {
+                    throw new ShpException("shp记录头不完整，记录" + (index + 1));
+                }
+                headerLoaded = true;
+            }
+            return dbfReader.hasNext();
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public SimpleFeature next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        headerLoaded = false;
+        try {
+            //记录头中的内容长度以16位字为单位
+            int contentBytes = recordHeader.getInt(4) * 2;
+            if (recordContent.capacity() < contentBytes) {
+                recordContent = ByteBuffer.allocate(contentBytes).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            recordContent.clear();
+            recordContent.limit(contentBytes);
+            if (readFully(shpChannel, recordContent) < contentBytes) {
+                throw new ShpException("shp记录不完整，记录" + (index + 1));
+            }
+            recordContent.flip();
+            int type = recordContent.getInt();
+            Object shape = type == ShpRecordEncoder.NULL_SHAPE ? null
+                    : shapeHandler.read(recordContent, ShapeType.forID(type), false);
+            Object[] values = dbfReader.readEntry();
+            builder.add(shape);
+            for (Object value : values) {
+                builder.add(value);
+            }
+            index++;
+            return builder.buildFeature(schema.getTypeName() + "." + index);
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(shpChannel, dbfReader, zipFile);
+    }
+
+    /**
+     * 与ShapefileDataStore一致，点以外的类型按多点、多线、多面处理
+     */
+    private static SimpleFeatureType buildSchema(String typeName, ShapeType shapeType, DbaseFileHeader dbfHeader, String prj) {
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName(typeName);
+        if (StringUtils.isNotEmpty(prj)) {
+            try {
+                typeBuilder.setCRS(CRS.parseWKT(prj));
+            } catch (Exception e) {
+                log.warn("{}的prj无法解析，不设置坐标系：{}", typeName, e.getMessage());
+            }
+        }
+        Class<? extends Geometry> binding;
+        if (shapeType.isPointType()) {
+            binding = Point.class;
+        } else if (shapeType.isMultiPointType()) {
+            binding = MultiPoint.class;
+        } else if (shapeType.isLineType()) {
+            binding = MultiLineString.class;
+        } else if (shapeType.isPolygonType()) {
+            binding = MultiPolygon.class;
+        } else {
+            binding = Geometry.class;
+        }
+        typeBuilder.add(GEOM_FIELD, binding);
+        for (int i = 0; i < dbfHeader.getNumFields(); i++) {
+            typeBuilder.length(dbfHeader.getFieldLength(i));
+            typeBuilder.add(dbfHeader.getFieldName(i), dbfHeader.getFieldClass(i));
+        }
+        return typeBuilder.buildFeatureType();
+    }
+
+    /**
+     * 打开条目并跳到指定偏移，存储的条目直接定位，压缩的条目解压跳过
+     */
+    private InputStream openAt(ZipEntry entry, long offset) throws IOException {
+        InputStream in = zipFile.getInputStream(entry);
+        try {
+            long remaining = offset;
+            while (remaining > 0) {
+                long skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        throw new EOFException(entry.getName() + "长度不足" + offset + "字节");
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 没有cpg时抽样dbf判断编码，无法判断时按GBK
+     */
+    private static Charset detectCharset(ZipFile zip, ZipEntry dbfEntry) throws IOException {
+        try (InputStream in = zip.getInputStream(dbfEntry)) {
+            Charset charset = DbfUtils.detectCharset(Channels.newChannel(in));
+            return charset != null ? charset : GBK;
+        }
+    }
+
+    /**
+     * 读取cpg、prj等文本条目，条目不存在时返回null
+     */
+    private static String readText(ZipFile zip, ZipEntry entry) throws IOException {
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            ReadableByteChannel channel = Channels.newChannel(in);
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(Math.max(entry.getSize(), 64), 64 * 1024));
+            int length = readFully(channel, buffer);
+            return new String(buffer.array(), 0, length, StandardCharsets.ISO_8859_1).trim();
+        }
+    }
+
+    /**
+     * 读满缓冲区或到达条目末尾
+     *
+     * @return 读取的字节数
+     */
+    private static int readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static void closeQuietly(ReadableByteChannel shp, DbaseFileReader dbf, ZipFile zip) {
+        try {
+            if (shp != null) {
+                shp.close();
+            }
+            if (dbf != null) {
+                dbf.close();
+            }
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        } finally {
+            if (zip != null) {
+                try {
+                    zip.close();
+                } catch (IOException e) {
+                    log.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.spl.geo.vector;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Geometry;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 将要素集合直接编码为zip压缩的shp，不在磁盘上生成shp文件。
+ * zip中的条目只能依次写入，而shp、shx、dbf的文件头需要记录数、范围和文件长度，因此分三次遍历要素集合：
+ * 第一次计算范围和每条记录的长度，第二次写入shp，第三次写入dbf，shx根据记录长度直接写入。
+ * 内存中只保留每条记录的长度(4字节)，要素集合需支持多次遍历
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/4/17
+ */
+class ShpZipWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(ShpZipWriter.class);
+
+    private static final int BUFFER_BYTES = 1024 * 1024;
+
+    private final SimpleFeatureCollection collection;
+
+    private final SimpleFeatureType type;
+
+    private final ShpRecordEncoder encoder;
+
+    private final Object[] values;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+    /**
+     * 每条shp记录内容的字节数
+     */
+    private int[] contentBytes = new int[1024];
+
+    private int recordCount;
+
+    ShpZipWriter(SimpleFeatureCollection collection, Charset charset) {
+        this.collection = collection;
+        this.type = collection.getSchema();
+        this.encoder = new ShpRecordEncoder(type, charset);
+        this.values = new Object[type.getAttributeCount()];
+    }
+
+    /**
+     * 写入zip，输出流写入完成后不关闭
+     *
+     * @param shpName zip中shp的名称，不带后缀
+     * @param out     输出流
+     * @return 写入的要素数量
+     */
+    int write(String shpName, OutputStream out) throws IOException {
+        long shpBytes = measure();
+        ZipOutputStream zip = new ZipOutputStream(out);
+
+        zip.putNextEntry(new ZipEntry(shpName + ".shx"));
+        writeBuffer(zip, encoder.shpHeader(ShpRecordEncoder.SHP_HEADER_BYTES + (long) ShpRecordEncoder.RECORD_HEADER_BYTES * recordCount));
+        buffer.clear();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        long offset = ShpRecordEncoder.SHP_HEADER_BYTES;
+        for (int i = 0; i < recordCount; i++) {
+            ensure(zip, ShpRecordEncoder.RECORD_HEADER_BYTES);
+            ShpRecordEncoder.putIndex(buffer, offset, contentBytes[i]);
+            offset += ShpRecordEncoder.RECORD_HEADER_BYTES + contentBytes[i];
+        }
+        flush(zip);
+        zip.closeEntry();
+
+        zip.putNextEntry(new ZipEntry(shpName + ShpFileUtils.SHP_SUFFIX));
+        writeBuffer(zip, encoder.shpHeader(shpBytes));
+        int recordNumber = 0;
+        try (SimpleFeatureIterator iterator = collection.features()) {
+            while (iterator.hasNext()) {
+                Geometry geometry = (Geometry) iterator.next().getDefaultGeometry();
+                int recordBytes = ShpRecordEncoder.RECORD_HEADER_BYTES + contentBytes[recordNumber];
+                recordNumber++;
+                if (recordBytes > buffer.capacity()) {
+                    //单条记录超过缓冲区时单独编码
+                    flush(zip);
+                    ByteBuffer large = ByteBuffer.allocate(recordBytes);
+                    encoder.putShape(large, geometry, recordNumber);
+                    zip.write(large.array(), 0, large.position());
+                } else {
+                    ensure(zip, recordBytes);
+                    encoder.putShape(buffer, geometry, recordNumber);
+                }
+            }
+        }
+        flush(zip);
+        zip.closeEntry();
+
+        zip.putNextEntry(new ZipEntry(shpName + DbfUtils.DBF_SUFFIX));
+        writeBuffer(zip, encoder.dbfHeader(recordCount));
+        try (SimpleFeatureIterator iterator = collection.features()) {
+            while (iterator.hasNext()) {
+                readValues(iterator.next());
+                ensure(zip, encoder.getDbfRecordBytes());
+                encoder.putRecord(buffer, values, 1);
+            }
+        }
+        //与GeoTools一致，不写dbf文件结束标记
+        flush(zip);
+        zip.closeEntry();
+
+        byte[] prj = encoder.prjBytes();
+        if (prj != null) {
+            zip.putNextEntry(new ZipEntry(shpName + ".prj"));
+            zip.write(prj);
+            zip.closeEntry();
+        }
+        zip.putNextEntry(new ZipEntry(shpName + ".cpg"));
+        zip.write(encoder.cpgBytes());
+        zip.closeEntry();
+        zip.finish();
+        log.debug("{}写入zip完成，要素{}条", shpName, recordCount);
+        return recordCount;
+    }
+
+    /**
+     * 第一次遍历，检查地理要素类型，计算范围和每条记录的长度
+     *
+     * @return shp文件总字节数
+     */
+    private long measure() {
+        long shpBytes = ShpRecordEncoder.SHP_HEADER_BYTES;
+        try (SimpleFeatureIterator iterator = collection.features()) {
+            while (iterator.hasNext()) {
+                Geometry geometry = (Geometry) iterator.next().getDefaultGeometry();
+                encoder.accept(geometry);
+                if (recordCount == contentBytes.length) {
+                    contentBytes = Arrays.copyOf(contentBytes, recordCount * 2);
+                }
+                int content = (int) encoder.contentBytes(geometry);
+                contentBytes[recordCount++] = content;
+                shpBytes += ShpRecordEncoder.RECORD_HEADER_BYTES + content;
+            }
+        }
+        return shpBytes;
+    }
+
+    /**
+     * shp的属性顺序为地理要素在前，其他属性按原顺序
+     */
+    private void readValues(SimpleFeature feature) {
+        int index = 1;
+        for (AttributeDescriptor descriptor : type.getAttributeDescriptors()) {
+            if (!(descriptor instanceof GeometryDescriptor)) {
+                values[index++] = feature.getAttribute(descriptor.getName());
+            }
+        }
+    }
+
+    private void ensure(OutputStream out, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(out);
+        }
+    }
+
+    private void flush(OutputStream out) throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+
+    private static void writeBuffer(OutputStream out, ByteBuffer header) throws IOException {
+        out.write(header.array(), header.position(), header.remaining());
+    }
+}
@@ -1,31 +1,45 @@
 package com.spl.geo.vector;
 
+import com.spl.geo.entity.ShpPartInfo;
 import com.spl.geo.exception.ShpException;
-import net.postgis.jdbc.PGgeometry;
+import org.apache.commons.lang3.StringUtils;
 import org.geotools.data.DataUtilities;
-import org.geotools.data.DefaultTransaction;
-import org.geotools.data.Transaction;
-import org.geotools.data.collection.ListFeatureCollection;
-import org.geotools.data.shapefile.ShapefileDataStore;
-import org.geotools.data.shapefile.ShapefileDataStoreFactory;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureSource;
-import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
-import org.locationtech.jts.io.WKTReader;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.Serializable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 /**
  * 写矢量工具类
@@ -38,44 +52,36 @@ public class WriteShpUtils {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(WriteShpUtils.class);
 
+    /**
+     * 流式导出时每次从数据库游标获取的行数
+     */
+    private static final int DEFAULT_FETCH_SIZE = 10000;
+
     private WriteShpUtils() {
     }
 
+    /**
+     * 要素集合写入shp，通过写入会话逐个要素写入，不在事务中缓存
+     *
+     * @param collection 需要创建shp的要素对象
+     * @param type       要素类型
+     * @param outShpPath 输出shp的文件路径
+     * @param charSet    属性编码
+     */
     public static void buildShpByFeatureCollection(SimpleFeatureCollection collection, SimpleFeatureType type, String outShpPath,String charSet) {
-        File outShpFile = ShpFileUtils.getEmptyShpFromPath(outShpPath);
-
-        ShapefileDataStoreFactory dataStoreFactory = new ShapefileDataStoreFactory();
-        ShapefileDataStore newDataStore = null;
-        try (Transaction transaction = new DefaultTransaction("create")) {
-            Map<String, Serializable> params = new HashMap<>(2);
-            params.put("url", outShpFile.toURI().toURL());
-            params.put("create spatial index", Boolean.TRUE);
-
-            newDataStore = (ShapefileDataStore) dataStoreFactory.createNewDataStore(params);
-            newDataStore.createSchema(type);
-            newDataStore.setCharset(Charset.forName(charSet));
-
-            String typeName = newDataStore.getTypeNames()[0];
-            SimpleFeatureSource featureSource = newDataStore.getFeatureSource(typeName);
-
-            if (!(featureSource instanceof SimpleFeatureStore)) {
-                throw new ShpException(typeName + " does not support read/write access");
-            }
-            SimpleFeatureStore featureStore = (SimpleFeatureStore) featureSource;
-            featureStore.setTransaction(transaction);
-            featureStore.addFeatures(collection);
-            transaction.commit();
-        } catch (Exception e) {
-            throw new ShpException(e.getMessage(), e);
-        } finally {
-            if (newDataStore != null) {
-                newDataStore.dispose();
+        try (ShpWriteSession session = ShpWriteSession.open(type, outShpPath, charSet);
+             SimpleFeatureIterator iterator = collection.features()) {
+            try {
+                while (iterator.hasNext()) {
+                    session.write(iterator.next());
+                }
+            } catch (RuntimeException e) {
+                session.abort();
+                throw e;
             }
         }
     }
 
-
-
     /**
      * @param collection 需要创建shp的要素对象
      * @param type       要素类型
@@ -86,7 +92,7 @@ public class WriteShpUtils {
     }
 
     /**
-     * list转shp
+     * list转shp，数据量大时使用query2Shp流式导出
      *
      * @param featureList 要素集合
      * @param shpPath     shp输出路径
@@ -119,15 +125,12 @@ public class WriteShpUtils {
             SimpleFeatureType type = DataUtilities.createType("Location", typeBuilder.substring(1));
             //组装featureList
             SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(type);
-            WKTReader reader = new WKTReader();
+            //geom、shape按EWKB解析，wkt按文本解析
+            EwkbGeometryReader reader = new EwkbGeometryReader();
             for (Map<String, Object> kv : featureList) {
                 for (String key : keyList) {
-                    if ("wkt".equalsIgnoreCase(key)) {
-                        featureBuilder.add(reader.read(kv.get(key).toString()));
-                    } else if (key.matches("(geom|shape)")) {
-                        PGgeometry pGgeometry = new PGgeometry(kv.get(key).toString());
-                        String s = pGgeometry.toString();
-                        featureBuilder.add(reader.read(s.substring(s.indexOf(";") + 1)));
+                    if (key.matches("(geom|shape|wkt)")) {
+                        featureBuilder.add(reader.read(kv.get(key)));
                     } else {
                         featureBuilder.add(kv.get(key));
                     }
@@ -140,6 +143,277 @@ public class WriteShpUtils {
         }
     }
 
+    /**
+     * 查询结果流式导出为shp，通过数据库游标分批获取，逐行写入文件，内存占用与数据量无关。
+     * 查询结果中geom、shape(PostGIS)或wkt字段为地理要素，其他字段为属性
+     *
+     * @param jdbcTemplate 数据库连接
+     * @param sql          查询语句
+     * @param shpPath      shp输出路径
+     * @param args         查询参数
+     * @return 导出的要素数量
+     */
+    public static long query2Shp(JdbcTemplate jdbcTemplate, String sql, String shpPath, Object... args) {
+        return query2Shp(jdbcTemplate.getDataSource(), sql, shpPath, DEFAULT_FETCH_SIZE, "UTF-8", args);
+    }
+
+    /**
+     * 查询结果流式导出为shp
+     *
+     * @param dataSource 数据源
+     * @param sql        查询语句
+     * @param shpPath    shp输出路径
+     * @param fetchSize  每次从游标获取的行数
+     * @param charSet    属性编码
+     * @param args       查询参数
+     * @return 导出的要素数量
+     */
+    public static long query2Shp(DataSource dataSource, String sql, String shpPath, int fetchSize, String charSet, Object... args) {
+        File outShpFile = ShpFileUtils.getEmptyShpFromPath(shpPath);
+        try (ShpExportRowHandler rowHandler = new ShpExportRowHandler(outShpFile, Charset.forName(charSet))) {
+            streamQuery(dataSource, sql, fetchSize, rowHandler, args);
+            if (rowHandler.getCount() == 0) {
+                LOGGER.info("数据表没有相关数据...");
+            } else {
+                LOGGER.info("共导出矢量要素{}条", rowHandler.getCount());
+            }
+            return rowHandler.getCount();
+        } catch (ShpException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 查询结果分卷导出，每个分卷的shp和dbf不超过上限(默认略小于2GB)，文件名为名称_part序号.shp，同时生成名称_manifest.json清单。
+     * 按数值主键字段的范围拆分为多段，每段在单独的线程和连接中查询并写入各自的分卷。
+     * 任一范围失败时其他范围在读取下一行时结束，全部结束后删除已写入的分卷，不生成清单
+     *
+     * @param dataSource   数据源，连接数不能小于线程数
+     * @param sql          查询语句
+     * @param keyColumn    用于拆分范围的数值字段，为空时不拆分，单线程按顺序分卷
+     * @param shpPath      shp输出路径
+     * @param threads      并行线程数
+     * @param maxPartBytes 每个分卷的字节数上限，小于等于0时使用默认值
+     * @param charSet      属性编码
+     * @param args         查询参数
+     * @return 分卷信息
+     */
+    public static List<ShpPartInfo> query2ShpParts(DataSource dataSource, String sql, String keyColumn, String shpPath, int threads,
+                                                   long maxPartBytes, String charSet, Object... args) {
+        File outShpFile = ShpFileUtils.getEmptyShpFromPath(shpPath);
+        Charset charset = Charset.forName(charSet);
+        long partBytes = maxPartBytes > 0 ? maxPartBytes : ShpPartWriter.DEFAULT_MAX_PART_BYTES;
+        AtomicInteger partCounter = new AtomicInteger();
+        List<ShpPartInfo> parts = new ArrayList<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        try {
+            if (StringUtils.isEmpty(keyColumn) || threads <= 1) {
+                parts.addAll(exportRange(dataSource, sql, outShpFile, charset, partBytes, partCounter, null, null, null, args));
+            } else {
+                //按主键的最小最大值均分为多个范围
+                String keyIdentifier = "t." + quoteIdentifier(keyColumn);
+                String boundSql = "select min(" + keyIdentifier + "),max(" + keyIdentifier + ") from (" + sql + ") t";
+                Long[] bounds = new JdbcTemplate(dataSource).queryForObject(boundSql,
+                        (rs, rowNum) -> new Long[]{rs.getObject(1, Long.class), rs.getObject(2, Long.class)}, args);
+                if (bounds == null || bounds[0] == null) {
+                    LOGGER.info("数据表没有相关数据...");
+                    return parts;
+                }
+                //bigint范围很大时差值超出long，按BigInteger计算
+                BigInteger max = BigInteger.valueOf(bounds[1]);
+                BigInteger step = max.subtract(BigInteger.valueOf(bounds[0])).divide(BigInteger.valueOf(threads)).add(BigInteger.ONE);
+                String rangeSql = "select * from (" + sql + ") t where " + keyIdentifier + " >= ? and " + keyIdentifier + " < ?";
+                //最后一个范围包含最大值，避免最大值加1溢出
+                String lastRangeSql = "select * from (" + sql + ") t where " + keyIdentifier + " >= ? and " + keyIdentifier + " <= ?";
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                try {
+                    List<Future<List<ShpPartInfo>>> futures = new ArrayList<>(threads);
+                    for (BigInteger start = BigInteger.valueOf(bounds[0]); start.compareTo(max) <= 0; start = start.add(step)) {
+                        BigInteger end = start.add(step);
+                        boolean last = end.compareTo(max) > 0;
+                        long rangeStart = start.longValue();
+                        long rangeEnd = last ? bounds[1] : end.longValue();
+                        String querySql = last ? lastRangeSql : rangeSql;
+                        Object[] rangeArgs = Arrays.copyOf(args, args.length + 2);
+                        rangeArgs[args.length] = rangeStart;
+                        rangeArgs[args.length + 1] = rangeEnd;
+                        futures.add(executor.submit(() -> exportRange(dataSource, querySql, outShpFile, charset, partBytes, partCounter,
+                                rangeStart, rangeEnd, cancelled, rangeArgs)));
+                    }
+                    for (Future<List<ShpPartInfo>> future : futures) {
+                        parts.addAll(future.get());
+                    }
+                } catch (InterruptedException e) {
+                    cancelled.set(true);
+                    Thread.currentThread().interrupt();
+                    throw new ShpException(e.getMessage(), e);
+                } catch (ExecutionException e) {
+                    cancelled.set(true);
+                    throw new ShpException(e.getMessage(), e.getCause());
+                } finally {
+                    //JDBC游标不响应中断，不使用shutdownNow，等待其他范围按取消标记结束后再清理分卷
+                    executor.shutdown();
+                    awaitTermination(executor);
+                }
+            }
+        } catch (RuntimeException e) {
+            //失败时删除已写入的分卷，不写清单，避免留下不完整的导出结果
+            deleteParts(outShpFile);
+            throw e;
+        }
+        parts.sort(Comparator.comparingInt(ShpPartInfo::getPartNumber));
+        writeManifest(outShpFile, parts);
+        LOGGER.info("共导出矢量要素{}条，分卷{}个", parts.stream().mapToLong(ShpPartInfo::getFeatures).sum(), parts.size());
+        return parts;
+    }
+
+    /**
+     * 要素集合分卷导出，属性编码为UTF-8
+     *
+     * @param collection   要素集合
+     * @param outShpPath   shp输出路径
+     * @param maxPartBytes 每个分卷的字节数上限，小于等于0时使用默认值
+     * @return 分卷信息
+     */
+    public static List<ShpPartInfo> buildShpParts(SimpleFeatureCollection collection, String outShpPath, long maxPartBytes) {
+        return buildShpParts(collection, outShpPath, maxPartBytes, "UTF-8");
+    }
+
+    /**
+     * 要素集合分卷导出，每个分卷的shp和dbf不超过上限，同时生成名称_manifest.json清单
+     *
+     * @param collection   要素集合
+     * @param outShpPath   shp输出路径
+     * @param maxPartBytes 每个分卷的字节数上限，小于等于0时使用默认值
+     * @param charSet      属性编码
+     * @return 分卷信息
+     */
+    public static List<ShpPartInfo> buildShpParts(SimpleFeatureCollection collection, String outShpPath, long maxPartBytes, String charSet) {
+        File outShpFile = ShpFileUtils.getEmptyShpFromPath(outShpPath);
+        String name = outShpFile.getName();
+        long partBytes = maxPartBytes > 0 ? maxPartBytes : ShpPartWriter.DEFAULT_MAX_PART_BYTES;
+        List<ShpPartInfo> parts;
+        try (ShpPartWriter partWriter = new ShpPartWriter(outShpFile.getParentFile(), name.substring(0, name.length() - ShpFileUtils.SHP_SUFFIX.length()),
+                collection.getSchema(), Charset.forName(charSet), partBytes, new AtomicInteger());
+             SimpleFeatureIterator iterator = collection.features()) {
+            while (iterator.hasNext()) {
+                partWriter.write(iterator.next());
+            }
+            parts = partWriter.getParts();
+        }
+        writeManifest(outShpFile, parts);
+        return parts;
+    }
+
+    /**
+     * 导出一个范围的数据，超过上限时写入新的分卷
+     */
+    private static List<ShpPartInfo> exportRange(DataSource dataSource, String sql, File outShpFile, Charset charset, long maxPartBytes,
+                                                 AtomicInteger partCounter, Long minKey, Long maxKey, AtomicBoolean cancelled, Object[] args) {
+        try (ShpExportRowHandler rowHandler = new ShpExportRowHandler(outShpFile, charset, maxPartBytes, partCounter)) {
+            rowHandler.setKeyRange(minKey, maxKey);
+            rowHandler.setCancelled(cancelled);
+            streamQuery(dataSource, sql, DEFAULT_FETCH_SIZE, rowHandler, args);
+            LOGGER.debug("范围[{},{})导出要素{}条", minKey, maxKey, rowHandler.getCount());
+            return rowHandler.getParts();
+        }
+    }
+
+    /**
+     * 等待线程池中的任务全部结束，期间的中断在结束后恢复
+     */
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+                LOGGER.info("等待导出任务结束...");
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 删除导出失败前已写入的分卷文件，包括未返回分卷信息的失败范围
+     */
+    private static void deleteParts(File outShpFile) {
+        String name = outShpFile.getName();
+        String partPrefix = name.substring(0, name.length() - ShpFileUtils.SHP_SUFFIX.length()) + "_part";
+        File[] partFiles = outShpFile.getParentFile().listFiles((dir, fileName) -> fileName.startsWith(partPrefix));
+        if (partFiles == null) {
+            return;
+        }
+        for (File partFile : partFiles) {
+            if (!partFile.delete()) {
+                LOGGER.warn("分卷文件{}删除失败", partFile.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * 字段名作为双引号标识符，内部的双引号转义
+     */
+    private static String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * 在只读事务中通过游标执行查询，PostgreSQL只有在非自动提交时才使用游标分批获取
+     */
+    private static void streamQuery(DataSource dataSource, String sql, int fetchSize, RowCallbackHandler rowHandler, Object[] args) {
+        JdbcTemplate cursorTemplate = new JdbcTemplate(dataSource);
+        cursorTemplate.setFetchSize(fetchSize);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.setReadOnly(true);
+        transactionTemplate.executeWithoutResult(status -> cursorTemplate.query(sql, rowHandler, args));
+    }
+
+    /**
+     * 写入分卷清单，与shp在同一文件夹，名称为shp名称_manifest.json
+     */
+    private static void writeManifest(File outShpFile, List<ShpPartInfo> parts) {
+        String name = outShpFile.getName();
+        String baseName = name.substring(0, name.length() - ShpFileUtils.SHP_SUFFIX.length());
+        StringBuilder json = new StringBuilder("{\n  \"name\": \"").append(escapeJson(baseName)).append("\",\n  \"parts\": [");
+        for (int i = 0; i < parts.size(); i++) {
+            ShpPartInfo part = parts.get(i);
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"part\": ").append(part.getPartNumber())
+                    .append(", \"file\": \"").append(escapeJson(new File(part.getShpPath()).getName())).append('"')
+                    .append(", \"features\": ").append(part.getFeatures())
+                    .append(", \"shpBytes\": ").append(part.getShpBytes())
+                    .append(", \"dbfBytes\": ").append(part.getDbfBytes());
+            if (part.getMinKey() != null) {
+                json.append(", \"minKey\": ").append(part.getMinKey()).append(", \"maxKey\": ").append(part.getMaxKey());
+            }
+            if (part.getBbox() != null) {
+                double[] bbox = part.getBbox();
+                json.append(", \"bbox\": [").append(bbox[0]).append(", ").append(bbox[1]).append(", ")
+                        .append(bbox[2]).append(", ").append(bbox[3]).append(']');
+            }
+            json.append('}');
+        }
+        json.append("\n  ]\n}\n");
+        File manifestFile = new File(outShpFile.getParentFile(), baseName + "_manifest.json");
+        try {
+            Files.write(manifestFile.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    private static String escapeJson(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
     /**
      * 构建Shp文件
      *
@@ -147,8 +421,73 @@ public class WriteShpUtils {
      * @param outShpPath  shp的输出路径
      */
     public static void buildShpByFeatureList(List<SimpleFeature> featureList, SimpleFeatureType type, String outShpPath) {
-        SimpleFeatureCollection collection = new ListFeatureCollection(type, featureList);
-        buildShpByFeatureCollection(collection, type, outShpPath);
+        buildShpByFeatureStream(featureList.stream(), type, outShpPath, "UTF-8");
+    }
+
+    /**
+     * 要素流逐个写入shp，要素直接写入文件，不在内存中缓存，可与ReadShpUtils.streamFromShp组成单次遍历的读取、处理、写入流程。
+     * 要素流由调用方关闭
+     *
+     * @param features   要素流，要素类型需与type一致
+     * @param type       要素类型
+     * @param outShpPath shp的输出路径
+     * @param charSet    属性编码
+     * @return 写入的要素数量
+     */
+    public static long buildShpByFeatureStream(Stream<SimpleFeature> features, SimpleFeatureType type, String outShpPath, String charSet) {
+        try (ShpWriteSession session = ShpWriteSession.open(type, outShpPath, charSet)) {
+            try {
+                features.forEachOrdered(session::write);
+            } catch (RuntimeException e) {
+                session.abort();
+                throw e;
+            }
+            return session.getCount();
+        }
+    }
+
+    /**
+     * 要素集合直接编码为zip压缩的shp写入输出流，不在磁盘上生成临时文件，适用于下载等场景。
+     * 要素集合会被遍历三次，需支持多次遍历，输出流由调用方关闭
+     *
+     * @param collection 要素集合
+     * @param shpName    zip中shp的名称，不带后缀
+     * @param charSet    属性编码
+     * @param out        输出流
+     * @return 写入的要素数量
+     */
+    public static int writeShpZip(SimpleFeatureCollection collection, String shpName, String charSet, OutputStream out) {
+        try {
+            return new ShpZipWriter(collection, Charset.forName(charSet)).write(shpName, out);
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 要素集合直接编码为zip压缩的shp，zip中shp的名称与zip名称一致
+     *
+     * @param collection 要素集合
+     * @param zipPath    zip输出路径
+     * @param charSet    属性编码
+     * @return 写入的要素数量
+     */
+    public static int buildShpZip(SimpleFeatureCollection collection, String zipPath, String charSet) {
+        File zipFile = new File(zipPath);
+        File parent = zipFile.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new ShpException("创建文件夹失败：" + parent.getAbsolutePath());
+        }
+        String name = zipFile.getName();
+        int index = name.lastIndexOf('.');
+        String shpName = index > 0 ? name.substring(0, index) : name;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(zipFile))) {
+            int count = writeShpZip(collection, shpName, charSet, out);
+            LOGGER.info("{}写入完成，要素{}条", zipFile.getAbsolutePath(), count);
+            return count;
+        } catch (IOException e) {
+            throw new ShpException(e.getMessage(), e);
+        }
     }
 
     /**
@@ -0,0 +1,20 @@
+package com.spl.geo.vector.enums;
+
+/**
+ * shp入库方式
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/6
+ */
+public enum IngestMode {
+    /**
+     * 通过insert语句批量插入，地理要素以wkt传输
+     */
+    INSERT,
+
+    /**
+     * 通过PostgreSQL的COPY协议(二进制格式)写入，地理要素以EWKB传输
+     */
+    COPY
+}
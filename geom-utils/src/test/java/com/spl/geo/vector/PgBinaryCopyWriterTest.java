@@ -0,0 +1,129 @@
+package com.spl.geo.vector;
+
+import com.spl.geo.exception.ShpException;
+import junit.framework.TestCase;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.io.WKBWriter;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * PgBinaryCopyWriter字段编码与PostgreSQL二进制COPY格式（numeric_send、date_send、EWKB）对比
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/3/6
+ */
+public class PgBinaryCopyWriterTest extends TestCase {
+
+    private final WKBWriter wkbWriter = new WKBWriter(2, true);
+
+    public void testNumeric() throws IOException {
+        //12345.678：位数3、权重1、正数、小数位3，各位为1、2345、6780
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.NUMERIC, new BigDecimal("12345.678")),
+                0, 0, 0, 14, 0, 3, 0, 1, 0, 0, 0, 3, 0x00, 0x01, 0x09, 0x29, 0x1A, 0x7C);
+        //-0.5：位数1、权重-1、负数、小数位1，各位为5000
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.NUMERIC, -0.5d),
+                0, 0, 0, 10, 0, 1, 0xFF, 0xFF, 0x40, 0x00, 0, 1, 0x13, 0x88);
+        //10000：末尾为0的组不写入
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.NUMERIC, 10000L),
+                0, 0, 0, 10, 0, 1, 0, 1, 0, 0, 0, 0, 0, 1);
+        //0.00001：权重-2，各位为1000
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.NUMERIC, new BigDecimal("0.00001")),
+                0, 0, 0, 10, 0, 1, 0xFF, 0xFE, 0, 0, 0, 5, 0x03, 0xE8);
+        //0：没有数字位
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.NUMERIC, 0),
+                0, 0, 0, 8, 0, 0, 0, 0, 0, 0, 0, 0);
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.NUMERIC, Double.NaN),
+                0, 0, 0, 8, 0, 0, 0, 0, 0xC0, 0x00, 0, 0);
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.NUMERIC, null), 0xFF, 0xFF, 0xFF, 0xFF);
+    }
+
+    public void testDate() throws IOException {
+        //距2000-01-01的天数
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.DATE, LocalDate.of(2023, 11, 20)), 0, 0, 0, 4, 0, 0, 0x22, 0x14);
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.DATE, "1999-12-31"), 0, 0, 0, 4, 0xFF, 0xFF, 0xFF, 0xFF);
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.DATE, java.sql.Date.valueOf("2000-01-01")), 0, 0, 0, 4, 0, 0, 0, 0);
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.DATE, null), 0xFF, 0xFF, 0xFF, 0xFF);
+    }
+
+    public void testGeometry() throws IOException {
+        GeometryFactory factory = new GeometryFactory();
+        //EWKB：大端、带srid标志的点类型、srid 4326、x=1、y=2
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.GEOMETRY, factory.createPoint(new Coordinate(1, 2))),
+                0, 0, 0, 25,
+                0x00, 0x20, 0x00, 0x00, 0x01, 0x00, 0x00, 0x10, 0xE6,
+                0x3F, 0xF0, 0, 0, 0, 0, 0, 0,
+                0x40, 0x00, 0, 0, 0, 0, 0, 0);
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.GEOMETRY, null), 0xFF, 0xFF, 0xFF, 0xFF);
+    }
+
+    public void testText() throws IOException {
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.TEXT, "中"), 0, 0, 0, 3, 0xE4, 0xB8, 0xAD);
+        assertBytes(encode(PgBinaryCopyWriter.ColumnType.TEXT, null), 0, 0, 0, 0);
+    }
+
+    public void testConnectionReleasedWhenNotPostgres() {
+        AtomicBoolean closed = new AtomicBoolean();
+        Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isWrapperFor":
+                            return false;
+                        case "close":
+                            closed.set(true);
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+        DataSource dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{DataSource.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getConnection":
+                            return connection;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+        try {
+            new PgBinaryCopyWriter(dataSource, "copy t from stdin (format binary)", new PgBinaryCopyWriter.ColumnType[0], 4326,
+                    new CommitInterval(0, 0), Shp2DbListener.NOOP);
+            fail("非PostgreSQL连接应抛出异常");
+        } catch (ShpException e) {
+            assertTrue("连接未释放", closed.get());
+        }
+    }
+
+    private byte[] encode(PgBinaryCopyWriter.ColumnType columnType, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        PgBinaryCopyWriter.writeValue(out, columnType, value, wkbWriter, 4326);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void assertBytes(byte[] actual, int... expected) {
+        assertEquals("字节数", expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("第" + i + "字节", (byte) expected[i], actual[i]);
+        }
+    }
+}
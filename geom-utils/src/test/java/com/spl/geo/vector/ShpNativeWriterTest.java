@@ -0,0 +1,226 @@
+package com.spl.geo.vector;
+
+import junit.framework.TestCase;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * ShpNativeWriter与ShapefileDataStore（WriteShpUtils）写出的文件逐字节对比
+ *
+ * @author surpassliang
+ * @version 1.0
+ * @date 2023/11/20
+ */
+public class ShpNativeWriterTest extends TestCase {
+
+    private static final String CHARSET = "GBK";
+
+    /**
+     * 中文字段所在的dbf字段序号
+     */
+    private static final int GBK_FIELD = 4;
+
+    private final GeometryFactory factory = new GeometryFactory();
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = Files.createTempDirectory("shp-native-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+        deleteQuietly(dir);
+    }
+
+    public void testPoint() throws IOException {
+        List<Geometry> geometries = new ArrayList<>();
+        geometries.add(factory.createPoint(new Coordinate(116.397, 39.908)));
+        geometries.add(factory.createPoint(new Coordinate(-73.985, 40.758)));
+        geometries.add(factory.createPoint(new Coordinate(0, 0)));
+        assertSameOutput("Point", geometries);
+    }
+
+    public void testMultiPolygonWithHoles() throws IOException {
+        Polygon first = factory.createPolygon(ring(0, 0, 10), new LinearRing[]{ring(2, 2, 2), ring(6, 6, 2)});
+        Polygon second = factory.createPolygon(ring(20, 20, 5), new LinearRing[]{ring(21, 21, 1)});
+        List<Geometry> geometries = new ArrayList<>();
+        geometries.add(factory.createMultiPolygon(new Polygon[]{first, second}));
+        geometries.add(factory.createMultiPolygon(new Polygon[]{factory.createPolygon(ring(-5, -5, 3))}));
+        geometries.add(factory.createMultiPolygon(new Polygon[]{second}));
+        assertSameOutput("MultiPolygon", geometries);
+    }
+
+    public void testPointZ() throws IOException {
+        List<Geometry> geometries = new ArrayList<>();
+        geometries.add(factory.createPoint(new Coordinate(116.397, 39.908, 45.5)));
+        geometries.add(factory.createPoint(new Coordinate(1, 2, -3)));
+        geometries.add(factory.createPoint(new Coordinate(4, 5, 6)));
+        assertSameOutput("Point", geometries);
+    }
+
+    public void testMultiLineStringZ() throws IOException {
+        List<Geometry> geometries = new ArrayList<>();
+        geometries.add(factory.createMultiLineString(new LineString[]{
+                factory.createLineString(new Coordinate[]{new Coordinate(0, 0, 1), new Coordinate(1, 1, 2), new Coordinate(2, 0, 3)}),
+                factory.createLineString(new Coordinate[]{new Coordinate(5, 5, 10), new Coordinate(6, 7, 11)})}));
+        geometries.add(factory.createMultiLineString(new LineString[]{
+                factory.createLineString(new Coordinate[]{new Coordinate(-1, -1, 0), new Coordinate(-2, -3, 0)})}));
+        geometries.add(factory.createMultiLineString(new LineString[]{
+                factory.createLineString(new Coordinate[]{new Coordinate(3, 3, 3), new Coordinate(4, 4, 4)})}));
+        assertSameOutput("MultiLineString", geometries);
+    }
+
+    public void testMultiPolygonZWithHoles() throws IOException {
+        Polygon polygon = factory.createPolygon(ringZ(0, 0, 10, 100), new LinearRing[]{ringZ(2, 2, 2, 50)});
+        List<Geometry> geometries = new ArrayList<>();
+        geometries.add(factory.createMultiPolygon(new Polygon[]{polygon}));
+        geometries.add(factory.createMultiPolygon(new Polygon[]{factory.createPolygon(ringZ(-5, -5, 3, 7))}));
+        geometries.add(factory.createMultiPolygon(new Polygon[]{polygon}));
+        assertSameOutput("MultiPolygon", geometries);
+    }
+
+    /**
+     * 同样的要素分别通过WriteShpUtils和ShpNativeWriter写出，对比各个文件
+     */
+    private void assertSameOutput(String geometryType, List<Geometry> geometries) throws IOException {
+        SimpleFeatureType type = featureType(geometryType, geometries.get(0).getClass());
+        List<Object[]> rows = rows(geometries);
+        List<SimpleFeature> features = new ArrayList<>();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        for (Object[] row : rows) {
+            features.add(builder.buildFeature(null, row));
+        }
+
+        File expected = new File(dir, "expected/layer.shp");
+        File actual = new File(dir, "actual/layer.shp");
+        WriteShpUtils.buildShpByFeatureCollection(new ListFeatureCollection(type, features), type, expected.getPath(), CHARSET);
+        try (ShpNativeWriter writer = ShpNativeWriter.open(type, actual.getPath(), CHARSET)) {
+            for (Object[] row : rows) {
+                writer.write((Geometry) row[0], Arrays.copyOfRange(row, 1, row.length));
+            }
+        }
+
+        assertSameBytes("shp", read(expected, "shp"), read(actual, "shp"));
+        assertSameBytes("shx", read(expected, "shx"), read(actual, "shx"));
+        assertSameBytes("prj", read(expected, "prj"), read(actual, "prj"));
+        if (sidecar(expected, "cpg").exists()) {
+            assertSameBytes("cpg", read(expected, "cpg"), read(actual, "cpg"));
+        }
+        assertTrue("缺少qix空间索引", sidecar(actual, "qix").exists());
+
+        byte[] expectedDbf = read(expected, "dbf");
+        byte[] actualDbf = read(actual, "dbf");
+        assertEquals("中文字段名", "名称", fieldName(actualDbf, GBK_FIELD));
+        //文件头中的最后更新日期和中文字段名不参与对比，ShapefileDataStore在设置编码前生成字段名
+        mask(expectedDbf, 1, 3);
+        mask(actualDbf, 1, 3);
+        mask(expectedDbf, 32 + 32 * GBK_FIELD, 11);
+        mask(actualDbf, 32 + 32 * GBK_FIELD, 11);
+        assertSameBytes("dbf", expectedDbf, actualDbf);
+    }
+
+    private SimpleFeatureType featureType(String name, Class<?> geometryClass) {
+        SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+        typeBuilder.setName(name);
+        typeBuilder.setCRS(DefaultGeographicCRS.WGS84);
+        typeBuilder.add("the_geom", geometryClass);
+        typeBuilder.add("name", String.class);
+        typeBuilder.add("count", Long.class);
+        typeBuilder.add("area", Double.class);
+        typeBuilder.add("day", Date.class);
+        typeBuilder.add("名称", String.class);
+        return typeBuilder.buildFeatureType();
+    }
+
+    /**
+     * 第一条记录属性齐全并含超长字符串，第二条属性全为空，第三条为负数和边界值
+     */
+    private List<Object[]> rows(List<Geometry> geometries) {
+        Calendar calendar = Calendar.getInstance(Locale.US);
+        calendar.clear();
+        calendar.set(2023, Calendar.NOVEMBER, 20, 12, 0, 0);
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            longText.append((char) ('a' + i % 26));
+        }
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{geometries.get(0), longText.toString(), 1234567890123L, 3.1415926, calendar.getTime(), "北京市"});
+        rows.add(new Object[]{geometries.get(1), null, null, null, null, null});
+        rows.add(new Object[]{geometries.get(2), "", -42L, -0.5, new Date(0), "上海"});
+        return rows;
+    }
+
+    private LinearRing ring(double x, double y, double size) {
+        return factory.createLinearRing(new Coordinate[]{new Coordinate(x, y), new Coordinate(x, y + size),
+                new Coordinate(x + size, y + size), new Coordinate(x + size, y), new Coordinate(x, y)});
+    }
+
+    private LinearRing ringZ(double x, double y, double size, double z) {
+        return factory.createLinearRing(new Coordinate[]{new Coordinate(x, y, z), new Coordinate(x, y + size, z + 1),
+                new Coordinate(x + size, y + size, z + 2), new Coordinate(x + size, y, z + 3), new Coordinate(x, y, z)});
+    }
+
+    private static String fieldName(byte[] dbf, int field) {
+        int offset = 32 + 32 * field;
+        int length = 0;
+        while (length < 11 && dbf[offset + length] != 0) {
+            length++;
+        }
+        return new String(dbf, offset, length, Charset.forName(CHARSET));
+    }
+
+    private static void mask(byte[] bytes, int offset, int length) {
+        Arrays.fill(bytes, offset, offset + length, (byte) 0);
+    }
+
+    private static void assertSameBytes(String name, byte[] expected, byte[] actual) {
+        assertEquals(name + "文件长度", expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != actual[i]) {
+                fail(name + "文件第" + i + "字节不一致，应为" + expected[i] + "，实际为" + actual[i]);
+            }
+        }
+    }
+
+    private static byte[] read(File shpFile, String extension) throws IOException {
+        return Files.readAllBytes(sidecar(shpFile, extension).toPath());
+    }
+
+    private static File sidecar(File shpFile, String extension) {
+        String name = shpFile.getName();
+        return new File(shpFile.getParentFile(), name.substring(0, name.length() - 3) + extension);
+    }
+
+    private static void deleteQuietly(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteQuietly(child);
+            }
+        }
+        file.delete();
+    }
+}